@@ -17,6 +17,12 @@ public interface PraeterPlugin {
      * Praeter uses this to determine whether resources should be included in the
      * resource pack used in that world, if the server owner decides to use per-world
      * resource packs.
+     * <p>
+     * The packs for each world are created while praeter is enabled, which is before
+     * plugins that depend on praeter are enabled. This method must therefore give the
+     * right answer once the plugin has been loaded, so anything it depends on, like
+     * the configuration of the plugin, must be loaded in {@code onLoad} rather than
+     * in {@code onEnable}.
      *
      * @param world The world.
      * @return Whether the plugin is enabled in the specified world.
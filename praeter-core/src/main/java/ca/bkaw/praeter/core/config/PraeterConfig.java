@@ -1,8 +1,11 @@
 package ca.bkaw.praeter.core.config;
 
+import ca.bkaw.praeter.core.resources.pack.output.CompressionPolicy;
 import ca.bkaw.praeter.core.resources.send.ResourcePackSender;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.file.Path;
+
 /**
  * The root praeter configuration.
  */
@@ -14,6 +17,13 @@ public interface PraeterConfig {
      */
     SenderConfig sender();
 
+    /**
+     * Get the resource packs configuration.
+     *
+     * @return The resource packs configuration section.
+     */
+    ResourcePacksConfig resourcePacks();
+
     /**
      * The configuration section containing the {@link ResourcePackSender}
      * configuration.
@@ -75,4 +85,73 @@ public interface PraeterConfig {
             int port();
         }
     }
+
+    /**
+     * The configuration section containing configuration for how resource packs are
+     * built.
+     */
+    interface ResourcePacksConfig {
+        /**
+         * Get whether the pack build cache is enabled. When enabled, the pack from the
+         * previous startup is reused if nothing that it was built from has changed.
+         *
+         * @return Whether the build cache is enabled.
+         * @see ca.bkaw.praeter.core.resources.bake.PackBuildCache
+         */
+        boolean buildCache();
+
+        /**
+         * Get the policy that decides how the entries of resource packs are
+         * compressed when the packs are written.
+         *
+         * @return The compression policy.
+         */
+        CompressionPolicy compression();
+
+        /**
+         * Get whether PNG textures are re-encoded losslessly to make them smaller
+         * when the packs are baked.
+         *
+         * @return Whether to optimize textures.
+         * @see ca.bkaw.praeter.core.resources.pack.output.PngOptimizer
+         */
+        boolean optimizeTextures();
+
+        /**
+         * Get the configuration for where the vanilla assets are read from.
+         *
+         * @return The vanilla assets configuration section.
+         */
+        VanillaAssetsConfig vanillaAssets();
+
+        /**
+         * The configuration section for where the vanilla assets are read from.
+         *
+         * @see ca.bkaw.praeter.core.resources.pack.VanillaAssets
+         */
+        interface VanillaAssetsConfig {
+            /**
+             * Get the url of the version manifest that the client jar is found from
+             * when it has to be downloaded.
+             *
+             * @return The url.
+             */
+            String versionManifestUrl();
+
+            /**
+             * Get the path of a client jar to use instead of downloading one.
+             *
+             * @return The path, or null.
+             */
+            @Nullable Path clientJar();
+
+            /**
+             * Get the path of a directory with client jars named after the version,
+             * for example {@code 1.19.2.jar}, to use instead of downloading one.
+             *
+             * @return The path, or null.
+             */
+            @Nullable Path mirrorDirectory();
+        }
+    }
 }
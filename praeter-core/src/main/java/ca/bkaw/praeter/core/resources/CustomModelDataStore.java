@@ -1,113 +1,433 @@
 package ca.bkaw.praeter.core.resources;
 
+import ca.bkaw.praeter.core.Praeter;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.bukkit.NamespacedKey;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * An object that keeps track of custom model data values that have been used and
  * ensures there are no duplicate values. Also makes sure that the value for a
  * model stays consistent even between resource packs and past restarts.
+ * <p>
+ * Values are allocated separately for each vanilla model, since custom model data
+ * only has to be unique for the same item, which keeps the values small. Each
+ * vanilla model keeps a set of free intervals, so allocating a value does not
+ * depend on how many values are already in use.
+ * <p>
+ * Changes are appended to a journal file next to the store when it is saved, and
+ * the journal is compacted into the store file once it has grown larger than the
+ * store itself.
  */
 public class CustomModelDataStore {
-    private static final String NEXT_VALUE = "next_value";
-    private static final String DATA = "data";
+    private static final String VERSION = "version";
+    private static final String MODELS = "models";
+    private static final String LEGACY = "legacy";
+    private static final String LEGACY_NEXT_VALUE = "next_value";
+    private static final String LEGACY_DATA = "data";
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * The greatest value that is allocated. The client compares custom model data
+     * in model overrides as floats, which can not represent all integers above
+     * this value.
+     */
+    private static final int MAX_VALUE = 1 << 24;
+    /**
+     * The amount of journal entries that are always allowed before the journal is
+     * compacted, even if the store is smaller than this.
+     */
+    private static final int MIN_COMPACT_ENTRIES = 1024;
 
     private final Path path;
-    private final Object2IntMap<NamespacedKey> map;
-    private int nextValue = 1;
+    private final Path journalPath;
+    private final Map<NamespacedKey, Allocation> allocations = new HashMap<>();
+    /**
+     * Values from the format before values were allocated per vanilla model. They
+     * are used for models that have not been given a value yet, if possible.
+     */
+    private final Object2IntMap<NamespacedKey> legacyValues = new Object2IntOpenHashMap<>();
+    private final List<String> pendingEntries = new ArrayList<>();
+    private int storeEntries;
+    private int journalEntries;
+    private boolean compactNeeded;
 
     /**
      * Create a new {@link CustomModelDataStore} linked to the specified path.
+     * <p>
+     * The journal is stored in a file next to the path with {@code .journal}
+     * appended to the file name.
      *
      * @param path The path of the store.
+     * @throws IOException If an I/O error occurs.
      */
     public CustomModelDataStore(Path path) throws IOException {
         this.path = path;
-        this.map = new Object2IntOpenHashMap<>();
+        this.journalPath = path.resolveSibling(path.getFileName() + ".journal");
         if (Files.isRegularFile(path)) {
-            JsonElement jsonElement = JsonParser.parseReader(Files.newBufferedReader(path));
-            JsonObject json = jsonElement.getAsJsonObject();
-            this.nextValue = json.get(NEXT_VALUE).getAsInt();
-            JsonObject object = json.getAsJsonObject(DATA);
-            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            JsonObject json;
+            try (Reader reader = Files.newBufferedReader(path)) {
+                json = JsonParser.parseReader(reader).getAsJsonObject();
+            }
+            if (json.has(LEGACY_NEXT_VALUE)) {
+                // The format before values were allocated per vanilla model
+                readLegacyValues(json.getAsJsonObject(LEGACY_DATA));
+                this.compactNeeded = true;
+            } else {
+                this.readModels(json.getAsJsonObject(MODELS));
+                if (json.has(LEGACY)) {
+                    readLegacyValues(json.getAsJsonObject(LEGACY));
+                }
+            }
+        }
+        if (Files.isRegularFile(this.journalPath)) {
+            this.replayJournal();
+        }
+    }
+
+    private void readModels(JsonObject models) {
+        for (Map.Entry<String, JsonElement> vanillaEntry : models.entrySet()) {
+            NamespacedKey vanillaModel = NamespacedKey.fromString(vanillaEntry.getKey());
+            Allocation allocation = this.getAllocation(vanillaModel);
+            for (Map.Entry<String, JsonElement> entry : vanillaEntry.getValue().getAsJsonObject().entrySet()) {
                 NamespacedKey modelKey = NamespacedKey.fromString(entry.getKey());
-                int customModelData = entry.getValue().getAsInt();
-                this.map.put(modelKey, customModelData);
+                allocation.put(modelKey, entry.getValue().getAsInt());
+                this.storeEntries++;
+            }
+        }
+    }
+
+    private void readLegacyValues(JsonObject object) {
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            NamespacedKey modelKey = NamespacedKey.fromString(entry.getKey());
+            this.legacyValues.put(modelKey, entry.getValue().getAsInt());
+        }
+    }
+
+    private void replayJournal() throws IOException {
+        for (String line : Files.readAllLines(this.journalPath, StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split(" ");
+            NamespacedKey vanillaModel = parts.length == 3 ? NamespacedKey.fromString(parts[0]) : null;
+            NamespacedKey modelKey = parts.length == 3 ? NamespacedKey.fromString(parts[1]) : null;
+            int customModelData;
+            try {
+                customModelData = parts.length == 3 ? Integer.parseInt(parts[2]) : 0;
+            } catch (NumberFormatException e) {
+                customModelData = 0;
             }
+            if (vanillaModel == null || modelKey == null || customModelData == 0) {
+                // Most likely a line that was only partly written, the entries
+                // after it can not be trusted.
+                Praeter.get().getLogger().warning("Ignoring the rest of the custom model data journal "
+                    + this.journalPath + " after invalid entry: " + line);
+                // Rewrite the store so that entries are not appended after the invalid one
+                this.compactNeeded = true;
+                break;
+            }
+            this.getAllocation(vanillaModel).put(modelKey, customModelData);
+            this.journalEntries++;
         }
     }
 
+    private Allocation getAllocation(NamespacedKey vanillaModel) {
+        return this.allocations.computeIfAbsent(vanillaModel, k -> new Allocation());
+    }
+
     /**
-     * Check whether the specified model key has a custom model data value in the store.
+     * Check whether the specified model has a custom model data value for the
+     * vanilla model in the store.
      *
+     * @param vanillaModel The vanilla model that the custom model data is added to.
      * @param modelKey The model key.
      * @return Whether there is a value.
      */
-    public boolean has(NamespacedKey modelKey) {
-        return this.map.containsKey(modelKey);
+    public boolean has(NamespacedKey vanillaModel, NamespacedKey modelKey) {
+        Allocation allocation = this.allocations.get(vanillaModel);
+        return allocation != null && allocation.values.containsKey(modelKey);
     }
 
     /**
      * Get the custom model data value for the specified model.
      * <p>
-     * Ensure there is a value with {@link #has(NamespacedKey)} before,
-     * otherwise an exception will be thrown.
+     * Ensure there is a value with {@link #has(NamespacedKey, NamespacedKey)}
+     * before, otherwise an exception will be thrown.
      *
+     * @param vanillaModel The vanilla model that the custom model data is added to.
      * @param modelKey The model.
      * @return The value.
      */
-    public int get(NamespacedKey modelKey) {
-        if (!this.map.containsKey(modelKey)) {
-            throw new IllegalArgumentException("No value for " + modelKey);
+    public int get(NamespacedKey vanillaModel, NamespacedKey modelKey) {
+        if (!this.has(vanillaModel, modelKey)) {
+            throw new IllegalArgumentException("No value for " + modelKey + " on " + vanillaModel);
         }
-        return this.map.getInt(modelKey);
+        return this.allocations.get(vanillaModel).values.getInt(modelKey);
     }
 
     /**
      * Set the custom model data value to associate with the model key.
+     * <p>
+     * If another model had the value for the same vanilla model, that model will
+     * no longer have a value.
      *
+     * @param vanillaModel The vanilla model that the custom model data is added to.
      * @param modelKey The model key.
      * @param customModelData The value.
      */
-    public void set(NamespacedKey modelKey, int customModelData) {
-        if (this.map.containsKey(modelKey)) {
-            int existingValue = this.map.getInt(modelKey);
-            if (existingValue == customModelData) {
-                // The model already had this value, nothing changed
-                return;
-            }
+    public void set(NamespacedKey vanillaModel, NamespacedKey modelKey, int customModelData) {
+        if (this.has(vanillaModel, modelKey) && this.get(vanillaModel, modelKey) == customModelData) {
+            // The model already had this value, nothing changed
+            return;
         }
-        this.map.put(modelKey, customModelData);
+        this.getAllocation(vanillaModel).put(modelKey, customModelData);
+        this.pendingEntries.add(vanillaModel + " " + modelKey + " " + customModelData);
+    }
+
+    /**
+     * Get the custom model data value for the specified model, allocating a new
+     * value if the model does not have one.
+     * <p>
+     * A model that had a value before values were allocated per vanilla model gets
+     * the same value again, if it is free.
+     *
+     * @param vanillaModel The vanilla model that the custom model data is added to.
+     * @param modelKey The model key.
+     * @return The value.
+     */
+    public int allocate(NamespacedKey vanillaModel, NamespacedKey modelKey) {
+        if (this.has(vanillaModel, modelKey)) {
+            return this.get(vanillaModel, modelKey);
+        }
+        Allocation allocation = this.getAllocation(vanillaModel);
+        int value;
+        if (this.legacyValues.containsKey(modelKey)
+            && allocation.isFree(this.legacyValues.getInt(modelKey))) {
+            value = this.legacyValues.getInt(modelKey);
+        } else {
+            value = allocation.first();
+        }
+        this.set(vanillaModel, modelKey, value);
+        return value;
+    }
+
+    /**
+     * Allocate a new custom model data value for the specified model, replacing the
+     * value it had.
+     * <p>
+     * This is used when the value of the model turns out to be used by something
+     * else. The previous value will therefore not be allocated again.
+     *
+     * @param vanillaModel The vanilla model that the custom model data is added to.
+     * @param modelKey The model key.
+     * @return The new value.
+     */
+    public int reallocate(NamespacedKey vanillaModel, NamespacedKey modelKey) {
+        int value = this.getAllocation(vanillaModel).first();
+        this.set(vanillaModel, modelKey, value);
+        return value;
     }
 
-    public int next() {
-        return this.nextValue++;
+    /**
+     * Get a hash of the values in the store, which changes whenever a value is
+     * changed.
+     *
+     * @return The hash.
+     */
+    public String getContentHash() {
+        Hasher hasher = Hashing.sha256().newHasher();
+        Map<String, Allocation> sorted = new TreeMap<>();
+        this.allocations.forEach((vanillaModel, allocation) -> sorted.put(vanillaModel.toString(), allocation));
+        sorted.forEach((vanillaModel, allocation) -> {
+            hasher.putString(vanillaModel, StandardCharsets.UTF_8).putByte((byte) 0);
+            allocation.sortedValues().forEach((modelKey, value) -> hasher
+                .putString(modelKey, StandardCharsets.UTF_8).putInt(value));
+        });
+        hasher.putByte((byte) 1);
+        Map<String, Integer> legacy = new TreeMap<>();
+        this.legacyValues.forEach((modelKey, value) -> legacy.put(modelKey.toString(), value));
+        legacy.forEach((modelKey, value) -> hasher.putString(modelKey, StandardCharsets.UTF_8).putInt(value));
+        return hasher.hash().toString();
     }
 
     /**
      * Save the store.
+     * <p>
+     * Changes are appended to the journal, unless the journal has grown large
+     * enough for the store to be compacted, in which case the store file is
+     * rewritten and the journal is removed.
      *
      * @throws IOException If an I/O error occurs.
      */
     public void save() throws IOException {
+        int entries = this.journalEntries + this.pendingEntries.size();
+        if (this.compactNeeded || entries > Math.max(MIN_COMPACT_ENTRIES, this.storeEntries)) {
+            this.compact();
+            return;
+        }
+        if (this.pendingEntries.isEmpty()) {
+            return;
+        }
+        Files.write(this.journalPath, this.pendingEntries, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        this.journalEntries = entries;
+        this.pendingEntries.clear();
+    }
+
+    /**
+     * Write all values to the store file and remove the journal.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    private void compact() throws IOException {
         JsonObject json = new JsonObject();
-        JsonObject data = new JsonObject();
-        json.add(DATA, data);
-        json.addProperty(NEXT_VALUE, this.nextValue);
-        for (Object2IntMap.Entry<NamespacedKey> entry : this.map.object2IntEntrySet()) {
-            NamespacedKey modelKey = entry.getKey();
-            int customModelData = entry.getIntValue();
-            data.addProperty(modelKey.toString(), customModelData);
-        }
-        Files.writeString(this.path, json.toString());
+        json.addProperty(VERSION, FORMAT_VERSION);
+        JsonObject models = new JsonObject();
+        json.add(MODELS, models);
+
+        Map<String, Allocation> sorted = new TreeMap<>();
+        this.allocations.forEach((vanillaModel, allocation) -> sorted.put(vanillaModel.toString(), allocation));
+        int storeEntries = 0;
+        for (Map.Entry<String, Allocation> entry : sorted.entrySet()) {
+            Map<String, Integer> values = entry.getValue().sortedValues();
+            if (values.isEmpty()) {
+                continue;
+            }
+            JsonObject data = new JsonObject();
+            values.forEach(data::addProperty);
+            models.add(entry.getKey(), data);
+            storeEntries += values.size();
+        }
+
+        // Keep legacy values for models that have not been given a value yet, as
+        // the plugins that add them may not be enabled right now.
+        Map<String, Integer> legacy = new TreeMap<>();
+        for (Object2IntMap.Entry<NamespacedKey> entry : this.legacyValues.object2IntEntrySet()) {
+            boolean migrated = this.allocations.values().stream()
+                .anyMatch(allocation -> allocation.values.containsKey(entry.getKey()));
+            if (!migrated) {
+                legacy.put(entry.getKey().toString(), entry.getIntValue());
+            }
+        }
+        if (!legacy.isEmpty()) {
+            JsonObject data = new JsonObject();
+            legacy.forEach(data::addProperty);
+            json.add(LEGACY, data);
+        }
+
+        // Write to a temporary file first so that the store is never left half written
+        Path tempPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+        Files.writeString(tempPath, json.toString());
+        try {
+            Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(this.journalPath);
+
+        this.storeEntries = storeEntries;
+        this.journalEntries = 0;
+        this.pendingEntries.clear();
+        this.compactNeeded = false;
+    }
+
+    /**
+     * The custom model data values of a vanilla model.
+     */
+    private static final class Allocation {
+        private final Object2IntMap<NamespacedKey> values = new Object2IntOpenHashMap<>();
+        private final Int2ObjectMap<NamespacedKey> owners = new Int2ObjectOpenHashMap<>();
+        /**
+         * The intervals of values that have not been used, from the first value of
+         * each interval to the last, inclusive.
+         */
+        private final TreeMap<Integer, Integer> free = new TreeMap<>();
+
+        private Allocation() {
+            this.free.put(1, MAX_VALUE);
+        }
+
+        private boolean isFree(int value) {
+            Map.Entry<Integer, Integer> interval = this.free.floorEntry(value);
+            return interval != null && value <= interval.getValue();
+        }
+
+        /**
+         * Remove a value from the free intervals.
+         *
+         * @param value The value.
+         */
+        private void take(int value) {
+            Map.Entry<Integer, Integer> interval = this.free.floorEntry(value);
+            if (interval == null || value > interval.getValue()) {
+                return;
+            }
+            int start = interval.getKey();
+            int end = interval.getValue();
+            this.free.remove(start);
+            if (start < value) {
+                this.free.put(start, value - 1);
+            }
+            if (value < end) {
+                this.free.put(value + 1, end);
+            }
+        }
+
+        /**
+         * Get the smallest free value and remove it from the free intervals.
+         *
+         * @return The value.
+         */
+        private int first() {
+            if (this.free.isEmpty()) {
+                throw new IllegalStateException("All custom model data values are in use.");
+            }
+            int value = this.free.firstKey();
+            this.take(value);
+            return value;
+        }
+
+        private void put(NamespacedKey modelKey, int value) {
+            this.take(value);
+            if (this.values.containsKey(modelKey)) {
+                // The previous value stays taken as it may still be in use
+                this.owners.remove(this.values.getInt(modelKey));
+            }
+            NamespacedKey previousOwner = this.owners.put(value, modelKey);
+            if (previousOwner != null && !previousOwner.equals(modelKey)) {
+                this.values.removeInt(previousOwner);
+            }
+            this.values.put(modelKey, value);
+        }
+
+        private Map<String, Integer> sortedValues() {
+            Map<String, Integer> sorted = new TreeMap<>();
+            for (Object2IntMap.Entry<NamespacedKey> entry : this.values.object2IntEntrySet()) {
+                sorted.put(entry.getKey().toString(), entry.getIntValue());
+            }
+            return sorted;
+        }
     }
 }
@@ -1,18 +1,34 @@
 package ca.bkaw.praeter.core.resources;
 
+import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * A holder for packs.
+ * <p>
+ * There is always a main pack where all plugin assets are included. When plugins
+ * are only enabled in some worlds, there are also additional packs that only
+ * contain the assets of the plugins that are enabled in those worlds.
  *
  * @param <T> The type of the pack.
  */
 public class PacksHolder<T> {
+    /**
+     * The id of the main pack.
+     */
+    public static final String MAIN_ID = "main";
+
     private final T main;
+    private final Map<String, T> packs = new LinkedHashMap<>();
 
     public PacksHolder(@NotNull T main) {
         this.main = main;
+        this.packs.put(MAIN_ID, main);
     }
 
     /**
@@ -25,6 +41,35 @@ public class PacksHolder<T> {
         return this.main;
     }
 
+    /**
+     * Get all packs by their ids, starting with the main pack.
+     *
+     * @return The unmodifiable map of packs.
+     */
+    @NotNull
+    public Map<String, T> getPacks() {
+        return Collections.unmodifiableMap(this.packs);
+    }
+
+    /**
+     * Add a pack other than the main pack.
+     *
+     * @param id The id of the pack. Must only contain lowercase letters, digits,
+     *           underscores and dashes, as it is used in urls and file names.
+     * @param pack The pack.
+     * @throws IllegalArgumentException If the id is invalid or already used.
+     */
+    @ApiStatus.Internal
+    public void addPack(@NotNull String id, @NotNull T pack) {
+        if (!id.matches("[a-z0-9_-]+")) {
+            throw new IllegalArgumentException("Invalid pack id: " + id);
+        }
+        if (this.packs.containsKey(id)) {
+            throw new IllegalArgumentException("A pack with the id " + id + " already exists.");
+        }
+        this.packs.put(id, pack);
+    }
+
     /**
      * Get the id of the pack.
      * <p>
@@ -36,8 +81,10 @@ public class PacksHolder<T> {
      */
     @NotNull
     public String getId(@NotNull T pack) {
-        if (pack == this.main) {
-            return "main";
+        for (Map.Entry<String, T> entry : this.packs.entrySet()) {
+            if (entry.getValue() == pack) {
+                return entry.getKey();
+            }
         }
         throw new IllegalArgumentException("The specified pack does not have an id.");
     }
@@ -50,6 +97,6 @@ public class PacksHolder<T> {
      */
     @Nullable
     public T getById(@NotNull String id) {
-        return "main".equals(id) ? this.main : null;
+        return this.packs.get(id);
     }
 }
@@ -1,10 +1,14 @@
 package ca.bkaw.praeter.core.resources;
 
 import ca.bkaw.praeter.core.Praeter;
+import ca.bkaw.praeter.core.PraeterPlugin;
 import ca.bkaw.praeter.core.resources.apply.ResourcePackApplier;
 import ca.bkaw.praeter.core.resources.bake.BakedResourcePack;
+import ca.bkaw.praeter.core.resources.pack.ResourcePack;
 import ca.bkaw.praeter.core.resources.send.ResourcePackRequest;
 import ca.bkaw.praeter.core.resources.send.ResourcePackSender;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.ApiStatus;
@@ -14,9 +18,12 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * The manager of resource packs.
@@ -24,6 +31,12 @@ import java.util.Map;
 public class ResourceManager {
     private final Map<Player, ResourcePackRequest> pendingRequests = new HashMap<>();
     private final Map<Player, BakedResourcePack> appliedPacks = new HashMap<>();
+    /**
+     * The names of the plugins that are enabled in each pack other than the main
+     * pack, which has all plugins.
+     */
+    private final Map<String, Set<String>> packPlugins = new HashMap<>();
+    private final Map<String, String> worldPackIds = new HashMap<>();
     private Path resourcePacksFolder;
     private ResourcePacksHolder packs;
     private PacksHolder<BakedResourcePack> bakedPacks;
@@ -44,12 +57,89 @@ public class ResourceManager {
 
     /**
      * Get a list of resource packs where the specified plugin is enabled.
+     * <p>
+     * The main pack is always included. Plugins that do not implement
+     * {@link PraeterPlugin} are treated as enabled in all packs.
      *
      * @param plugin The plugin.
      * @return The list of resource packs.
      */
     public ResourcePackList getResourcePacks(Plugin plugin) {
-        return new ResourcePackList(Collections.singletonList(this.packs.getMain())); // TODO
+        List<ResourcePack> resourcePacks = new ArrayList<>();
+        for (Map.Entry<String, ResourcePack> entry : this.getPacks().getPacks().entrySet()) {
+            Set<String> plugins = this.packPlugins.get(entry.getKey());
+            if (plugins == null || !(plugin instanceof PraeterPlugin) || plugins.contains(plugin.getName())) {
+                resourcePacks.add(entry.getValue());
+            }
+        }
+        return new ResourcePackList(resourcePacks);
+    }
+
+    /**
+     * Get the names of the {@link PraeterPlugin}s that are enabled in a world.
+     *
+     * @param world The world.
+     * @return The sorted set of plugin names.
+     * @see PraeterPlugin#isEnabledIn(World)
+     */
+    @NotNull
+    public Set<String> getEnabledPlugins(@NotNull World world) {
+        Set<String> plugins = new TreeSet<>();
+        for (Plugin plugin : Bukkit.getPluginManager().getPlugins()) {
+            if (plugin instanceof PraeterPlugin praeterPlugin && praeterPlugin.isEnabledIn(world)) {
+                plugins.add(plugin.getName());
+            }
+        }
+        return plugins;
+    }
+
+    /**
+     * Get the id of the pack to use in a world.
+     * <p>
+     * This is the pack that was created for the plugins that are enabled in the
+     * world, or the main pack if there is no such pack, for example for worlds that
+     * were loaded after startup with another combination of plugins.
+     *
+     * @param world The world.
+     * @return The id of the pack.
+     */
+    @NotNull
+    public String getPackId(@NotNull World world) {
+        return this.worldPackIds.computeIfAbsent(world.getName(), name -> {
+            Set<String> enabledPlugins = this.getEnabledPlugins(world);
+            for (Map.Entry<String, Set<String>> entry : this.packPlugins.entrySet()) {
+                if (entry.getValue().equals(enabledPlugins)) {
+                    return entry.getKey();
+                }
+            }
+            return PacksHolder.MAIN_ID;
+        });
+    }
+
+    /**
+     * Get the baked resource pack to use in a world.
+     *
+     * @param world The world.
+     * @return The baked resource pack.
+     * @see #getPackId(World)
+     */
+    @NotNull
+    public BakedResourcePack getBakedResourcePack(@NotNull World world) {
+        PacksHolder<BakedResourcePack> bakedPacks = this.getBakedPacks();
+        BakedResourcePack pack = bakedPacks.getById(this.getPackId(world));
+        return pack != null ? pack : bakedPacks.getMain();
+    }
+
+    /**
+     * Set the plugins that are enabled in a pack other than the main pack.
+     *
+     * @param id The id of the pack.
+     * @param pluginNames The names of the plugins.
+     */
+    @ApiStatus.Internal
+    public void setPackPlugins(@NotNull String id, @NotNull Set<String> pluginNames) {
+        this.packPlugins.put(id, Set.copyOf(pluginNames));
+        this.worldPackIds.clear();
     }
 
     /**
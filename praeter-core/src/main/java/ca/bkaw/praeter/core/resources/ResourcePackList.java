@@ -5,8 +5,11 @@ import ca.bkaw.praeter.core.resources.pack.ResourcePack;
 import org.bukkit.NamespacedKey;
 import org.jetbrains.annotations.NotNull;
 
-import java.nio.file.Files;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -37,8 +40,11 @@ public class ResourcePackList implements Iterable<ResourcePack> {
      * Get a resource that exists in all packs in this list. Or if not found, search
      * vanilla assets too.
      * <p>
-     * If the resource is found in one of the packs, but not another, an exception
-     * will be thrown.
+     * If the resource is found in some of the packs, but not all of them, an
+     * exception will be thrown that says which packs have the resource.
+     * <p>
+     * Whether the resource exists is answered from the in-memory file index of each
+     * pack when possible, see {@link ResourcePack#hasFile(String)}.
      *
      * @param filePath The file path to search for.
      * @return The path.
@@ -47,25 +53,39 @@ public class ResourcePackList implements Iterable<ResourcePack> {
      */
     @NotNull
     public Path getResource(String filePath) {
-        Path foundPath = null;
-        for (ResourcePack resourcePack : this) {
-            Path path = resourcePack.getPath(filePath);
-            if (Files.exists(path)) {
-                foundPath = path;
-            } else if (foundPath != null) {
-                // The resource was found in one pack, but not in another
-                throw new RuntimeException("The resource '" + filePath + "' was found in one pack, but not in another.");
+        try {
+            Path foundPath = null;
+            int found = 0;
+            for (ResourcePack resourcePack : this) {
+                if (resourcePack.hasFile(filePath)) {
+                    foundPath = resourcePack.getPath(filePath);
+                    found++;
+                }
             }
-        }
-        if (foundPath != null) {
-            return foundPath;
-        }
-        // The resource was not found in the packs, lets search the vanilla assets
-        Path path = Praeter.get().getResourceManager().getPacks().getVanillaAssets().getPath(filePath);
-        if (Files.exists(path)) {
-            return path;
-        } else {
-            throw new RuntimeException("The resource '" + filePath + "' was not found.");
+            if (found > 0 && found < this.list.size()) {
+                // The resource was found in some packs, but not in others
+                List<Integer> packsWithResource = new ArrayList<>(found);
+                for (int i = 0; i < this.list.size(); i++) {
+                    if (this.list.get(i).hasFile(filePath)) {
+                        packsWithResource.add(i);
+                    }
+                }
+                throw new RuntimeException("The resource '" + filePath + "' was found in one pack, but not " +
+                    "in another. It exists in the packs at " + packsWithResource + " of " + this.list.size()
+                    + " packs.");
+            }
+            if (foundPath != null) {
+                return foundPath;
+            }
+            // The resource was not found in the packs, lets search the vanilla assets
+            ResourcePack vanillaAssets = Praeter.get().getResourceManager().getPacks().getVanillaAssets();
+            if (vanillaAssets.hasFile(filePath)) {
+                return vanillaAssets.getPath(filePath);
+            } else {
+                throw new RuntimeException("The resource '" + filePath + "' was not found.");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to look up the resource '" + filePath + "'.", e);
         }
     }
 
@@ -100,4 +120,22 @@ public class ResourcePackList implements Iterable<ResourcePack> {
     public Path getTexturePath(NamespacedKey namespacedKey) {
         return this.getResource(ResourcePack.getTextureStringPath(namespacedKey));
     }
+
+    /**
+     * Read a texture that exists in all packs in this list. Or if not found, search
+     * vanilla assets too.
+     * <p>
+     * The decoded texture is shared using the {@link TextureCache} of the
+     * {@link ResourcePacksHolder}, so the same texture is only decoded once.
+     *
+     * @param namespacedKey The namespaced key of the texture.
+     * @return The decoded texture, which must not be modified.
+     * @throws IOException If an I/O error occurs.
+     * @see #getTexturePath(NamespacedKey)
+     */
+    @NotNull
+    public BufferedImage readTexture(NamespacedKey namespacedKey) throws IOException {
+        TextureCache textureCache = Praeter.get().getResourceManager().getPacks().getTextureCache();
+        return textureCache.get(this.getTexturePath(namespacedKey));
+    }
 }
\ No newline at end of file
@@ -1,9 +1,13 @@
 package ca.bkaw.praeter.core.resources;
 
+import ca.bkaw.praeter.core.resources.bake.PackBuildCache;
 import ca.bkaw.praeter.core.resources.pack.ResourcePack;
+import org.bukkit.NamespacedKey;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 
+import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -15,10 +19,20 @@ import java.util.List;
 public class ResourcePacksHolder extends PacksHolder<ResourcePack> {
     private ResourcePack vanillaAssets;
     private final CustomModelDataStore customModelDataStore;
+    private final PackBuildCache buildCache;
+    private final TextureCache textureCache = new TextureCache();
 
-    public ResourcePacksHolder(ResourcePack main, CustomModelDataStore customModelDataStore) {
+    public ResourcePacksHolder(ResourcePack main, CustomModelDataStore customModelDataStore, PackBuildCache buildCache) {
         super(main);
         this.customModelDataStore = customModelDataStore;
+        this.buildCache = buildCache;
+        main.setTextureCache(this.textureCache);
+    }
+
+    @Override
+    public void addPack(@NotNull String id, @NotNull ResourcePack pack) {
+        super.addPack(id, pack);
+        pack.setTextureCache(this.textureCache);
     }
 
     /**
@@ -43,6 +57,42 @@ public class ResourcePacksHolder extends PacksHolder<ResourcePack> {
         return this.customModelDataStore;
     }
 
+    /**
+     * Get the {@link PackBuildCache}.
+     * <p>
+     * The files in the packs are part of the fingerprint of each pack. Anything else
+     * that affects how the packs are written should be added as an input to the
+     * cache, otherwise a stale pack may be reused.
+     *
+     * @return The build cache.
+     */
+    public PackBuildCache getBuildCache() {
+        return this.buildCache;
+    }
+
+    /**
+     * Get the {@link TextureCache} of decoded textures that is shared while the
+     * packs are being set up.
+     *
+     * @return The texture cache.
+     * @see ResourcePackList#readTexture(NamespacedKey)
+     */
+    public TextureCache getTextureCache() {
+        return this.textureCache;
+    }
+
+    /**
+     * Read a texture from the vanilla assets, using the {@link TextureCache}.
+     *
+     * @param namespacedKey The namespaced key of the texture.
+     * @return The decoded texture, which must not be modified.
+     * @throws IOException If an I/O error occurs.
+     */
+    @NotNull
+    public BufferedImage readVanillaTexture(NamespacedKey namespacedKey) throws IOException {
+        return this.textureCache.get(this.getVanillaAssets().getTexturePath(namespacedKey));
+    }
+
     /**
      * Set the vanilla assets.
      *
@@ -0,0 +1,135 @@
+package ca.bkaw.praeter.core.resources;
+
+import ca.bkaw.praeter.core.resources.draw.PixelBuffer;
+import org.jetbrains.annotations.NotNull;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of decoded textures, shared by everything that draws textures
+ * while the packs are being set up.
+ * <p>
+ * Textures are keyed by the path they were read from, including the file system,
+ * so a texture is decoded once even when it is drawn by many gui types or
+ * components, and the same texture path in different packs has separate entries.
+ * The least recently used textures are removed when the decoded textures together
+ * have more pixels than the limit.
+ * <p>
+ * Resource packs that the cache is {@link
+ * ca.bkaw.praeter.core.resources.pack.ResourcePack#setTextureCache(TextureCache)
+ * set on} invalidate textures that are written and clear the cache when other
+ * packs are included.
+ * <p>
+ * The returned images are shared and must not be modified. Draw them onto another
+ * image, or use {@link BufferedImage#getSubimage(int, int, int, int)} only to read
+ * them.
+ */
+public class TextureCache {
+    /**
+     * The default maximum amount of pixels of all cached textures, which is 64 MiB
+     * of decoded ARGB pixels.
+     */
+    public static final long DEFAULT_MAX_PIXELS = 16L * 1024 * 1024;
+
+    private final long maxPixels;
+    private final Map<Path, BufferedImage> textures = new LinkedHashMap<>(16, 0.75f, true);
+    private long pixels;
+
+    /**
+     * Create a new {@link TextureCache} with the default limit.
+     */
+    public TextureCache() {
+        this(DEFAULT_MAX_PIXELS);
+    }
+
+    /**
+     * Create a new {@link TextureCache}.
+     *
+     * @param maxPixels The maximum amount of pixels of all cached textures.
+     */
+    public TextureCache(long maxPixels) {
+        if (maxPixels < 0) {
+            throw new IllegalArgumentException("The maximum amount of pixels can not be negative.");
+        }
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * Get a decoded texture, reading it if it is not cached.
+     *
+     * @param path The path of the texture.
+     * @return The decoded texture, which must not be modified.
+     * @throws IOException If an I/O error occurs, or if the file is not an image.
+     */
+    @NotNull
+    public synchronized BufferedImage get(@NotNull Path path) throws IOException {
+        Path key = getKey(path);
+        BufferedImage image = this.textures.get(key);
+        if (image != null) {
+            return image;
+        }
+
+        image = read(path);
+        long imagePixels = (long) image.getWidth() * image.getHeight();
+        if (imagePixels <= this.maxPixels) {
+            this.textures.put(key, image);
+            this.pixels += imagePixels;
+            this.evict();
+        }
+        return image;
+    }
+
+    /**
+     * Remove a texture from the cache, for example because the file was written to.
+     *
+     * @param path The path of the texture.
+     */
+    public synchronized void invalidate(@NotNull Path path) {
+        BufferedImage image = this.textures.remove(getKey(path));
+        if (image != null) {
+            this.pixels -= (long) image.getWidth() * image.getHeight();
+        }
+    }
+
+    /**
+     * Remove all cached textures.
+     */
+    public synchronized void clear() {
+        this.textures.clear();
+        this.pixels = 0;
+    }
+
+    private void evict() {
+        Iterator<BufferedImage> iterator = this.textures.values().iterator();
+        while (this.pixels > this.maxPixels && iterator.hasNext()) {
+            BufferedImage image = iterator.next();
+            this.pixels -= (long) image.getWidth() * image.getHeight();
+            iterator.remove();
+        }
+    }
+
+    private static Path getKey(Path path) {
+        // Paths are only equal if they belong to the same file system
+        return path.toAbsolutePath().normalize();
+    }
+
+    private static BufferedImage read(Path path) throws IOException {
+        BufferedImage image;
+        try (InputStream stream = Files.newInputStream(path)) {
+            image = ImageIO.read(stream);
+        }
+        if (image == null) {
+            throw new IOException("The texture " + path + " is not a supported image.");
+        }
+        // Convert once so that drawing the texture does not have to
+        return PixelBuffer.toIntArgb(image);
+    }
+}
@@ -1,16 +1,22 @@
 package ca.bkaw.praeter.core.resources.apply;
 
 import ca.bkaw.praeter.core.resources.ResourceManager;
+import ca.bkaw.praeter.core.resources.bake.BakedResourcePack;
+import ca.bkaw.praeter.core.resources.send.ResourcePackRequest;
 import net.kyori.adventure.text.Component;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.plugin.Plugin;
 
 /**
- * The default {@link ResourcePackApplier} implementation that applies the main
- * resource pack when the player joins.
+ * The default {@link ResourcePackApplier} implementation that applies the resource
+ * pack for the player's world when the player joins, and when the player changes
+ * to a world that uses another pack.
+ *
+ * @see ResourceManager#getBakedResourcePack(org.bukkit.World)
  */
 public class DefaultResourcePackApplier implements Listener, ResourcePackApplier {
     private final ResourceManager resourceManager;
@@ -25,13 +31,34 @@ public class DefaultResourcePackApplier implements Listener, ResourcePackApplier
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
 
-        player.getServer().getScheduler().runTask(this.plugin, () ->
-                this.resourceManager.getResourcePackSender().send(
-                    this.resourceManager.getBakedPacks().getMain(),
-                    player,
-                    true,
-                    Component.text("Please accept the resource pack to see custom additions to the game.")
-                )
+        player.getServer().getScheduler().runTask(this.plugin, () -> this.sendPack(player));
+    }
+
+    @EventHandler
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        Player player = event.getPlayer();
+        BakedResourcePack resourcePack = this.resourceManager.getBakedResourcePack(player.getWorld());
+
+        // Only send the pack if the player does not already have it or is not
+        // already downloading it
+        ResourcePackRequest request = this.resourceManager.getPendingRequests().get(player);
+        BakedResourcePack current = request != null
+            ? request.getResourcePack()
+            : this.resourceManager.getAppliedPacks().get(player);
+        if (current != resourcePack) {
+            this.sendPack(player);
+        }
+    }
+
+    private void sendPack(Player player) {
+        if (!player.isOnline()) {
+            return;
+        }
+        this.resourceManager.getResourcePackSender().send(
+            this.resourceManager.getBakedResourcePack(player.getWorld()),
+            player,
+            true,
+            Component.text("Please accept the resource pack to see custom additions to the game.")
         );
     }
 
@@ -43,5 +70,6 @@ public class DefaultResourcePackApplier implements Listener, ResourcePackApplier
     @Override
     public void remove() {
         PlayerJoinEvent.getHandlerList().unregister(this);
+        PlayerChangedWorldEvent.getHandlerList().unregister(this);
     }
 }
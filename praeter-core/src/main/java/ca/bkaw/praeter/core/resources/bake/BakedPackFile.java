@@ -0,0 +1,31 @@
+package ca.bkaw.praeter.core.resources.bake;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The file that a {@link BakedResourcePack} has been written to.
+ * <p>
+ * The SHA-1 hash is computed once when the file is written, so that sending the
+ * pack to players does not have to read the file.
+ *
+ * @param path The path of the pack file.
+ * @param size The size of the file, in bytes.
+ * @param sha1 The SHA-1 hash of the file contents.
+ */
+public record BakedPackFile(Path path, long size, byte[] sha1) {
+    /**
+     * Create a new {@link MessageDigest} for SHA-1.
+     *
+     * @return The message digest.
+     */
+    public static MessageDigest newSha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Should never happen as all Java platforms are required to implement SHA-1
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -1,24 +1,16 @@
 package ca.bkaw.praeter.core.resources.bake;
 
-import ca.bkaw.praeter.core.resources.font.BitmapFontCharIdentifier;
 import ca.bkaw.praeter.core.resources.font.FontCharIdentifier;
-import ca.bkaw.praeter.core.resources.font.SpaceFontCharIdentifier;
-import ca.bkaw.praeter.core.resources.pack.JsonResource;
+import ca.bkaw.praeter.core.resources.font.FontCharIds;
 import ca.bkaw.praeter.core.resources.pack.ResourcePack;
 import com.google.common.collect.ImmutableMap;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Stream;
 
 /**
  * A resource pack that has been generated and finished.
@@ -29,6 +21,11 @@ import java.util.stream.Stream;
 public class BakedResourcePack {
     private final Map<NamespacedKey, BakedItemModel> itemModels;
     private final Map<FontCharIdentifier, BakedFontChar> fontChars;
+    /**
+     * The baked font characters indexed by their {@link FontCharIds interned id}.
+     */
+    private final BakedFontChar[] fontCharsById;
+    private BakedPackFile file;
 
     /**
      * Create a new baked resource pack.
@@ -42,6 +39,20 @@ public class BakedResourcePack {
                              Map<FontCharIdentifier, BakedFontChar> fontChars) {
         this.itemModels = ImmutableMap.copyOf(itemModels);
         this.fontChars = ImmutableMap.copyOf(fontChars);
+
+        int[] ids = new int[this.fontChars.size()];
+        int maxId = -1;
+        int i = 0;
+        for (FontCharIdentifier identifier : this.fontChars.keySet()) {
+            ids[i] = FontCharIds.intern(identifier);
+            maxId = Math.max(maxId, ids[i]);
+            i++;
+        }
+        this.fontCharsById = new BakedFontChar[maxId + 1];
+        i = 0;
+        for (BakedFontChar fontChar : this.fontChars.values()) {
+            this.fontCharsById[ids[i++]] = fontChar;
+        }
     }
 
     /**
@@ -66,122 +77,84 @@ public class BakedResourcePack {
         return this.fontChars.get(identifier);
     }
 
+    /**
+     * Get the baked font char from the interned id of a font char identifier.
+     * <p>
+     * This is used when rendering {@link ca.bkaw.praeter.core.resources.font.FontSequence
+     * font sequences}, which intern their identifiers when they are created.
+     *
+     * @param id The id from {@link FontCharIds#intern(FontCharIdentifier)}.
+     * @return The baked font character, or null if the pack does not contain it.
+     */
+    @Nullable
+    public BakedFontChar getFontChar(int id) {
+        if (id < 0 || id >= this.fontCharsById.length) {
+            return null;
+        }
+        return this.fontCharsById[id];
+    }
+
+    /**
+     * Get the map of all baked item models.
+     *
+     * @return The immutable map.
+     */
+    Map<NamespacedKey, BakedItemModel> getItemModels() {
+        return this.itemModels;
+    }
+
+    /**
+     * Get the map of all baked font characters.
+     *
+     * @return The immutable map.
+     */
+    Map<FontCharIdentifier, BakedFontChar> getFontChars() {
+        return this.fontChars;
+    }
+
+    /**
+     * Get the file that this pack has been written to.
+     *
+     * @return The pack file, or null if the pack has not been written to a file.
+     */
+    @Nullable
+    public BakedPackFile getFile() {
+        return this.file;
+    }
+
+    /**
+     * Set the file that this pack has been written to.
+     * <p>
+     * Must be called again when the pack file changes, so that the stored hash stays
+     * valid.
+     *
+     * @param file The pack file.
+     */
+    @ApiStatus.Internal
+    public void setFile(@NotNull BakedPackFile file) {
+        this.file = file;
+    }
+
     /**
      * Bake the specified resource pack.
      * <p>
-     * This will scan the resource pack to create mappings for models and font chars.
+     * The mappings for models and font chars are taken from the
+     * {@link ResourcePack#getIndex() index} of the pack, which is kept up to date
+     * while the pack is built, so the pack does not have to be scanned.
      * <p>
      * If the resource pack is changed, changes will not be reflected in the baked
      * resource pack. It is therefore recommended that the resource pack is closed
      * after it has been baked.
+     * <p>
+     * The pack is {@link ResourcePack#flush() flushed} before it is baked.
      *
      * @param pack The resource pack.
      * @return The mapped resource pack.
      * @throws IOException If an I/O error occurs.
      */
     public static BakedResourcePack bake(ResourcePack pack) throws IOException {
-        Map<NamespacedKey, BakedItemModel> itemModels = bakeItemModels(pack);
-        Map<FontCharIdentifier, BakedFontChar> fontChars = bakeFontChars(pack);
-
-        return new BakedResourcePack(itemModels, fontChars);
-    }
-
-    private static Map<NamespacedKey, BakedItemModel> bakeItemModels(ResourcePack pack) throws IOException {
-        Map<NamespacedKey, BakedItemModel> itemModels = new HashMap<>();
-
-        Path itemPath = pack.getPath("assets/minecraft/models/item");
-        if (Files.notExists(itemPath)) {
-            return itemModels;
-        }
-        try (Stream<Path> s = Files.list(itemPath)) {
-            for (Path path : s
-                .filter(path -> path.toString().endsWith(".json"))
-                .toList()) {
-                JsonResource jsonResource = new JsonResource(pack, path);
-                if (jsonResource.getJson().has("overrides")) {
-                    JsonArray overrides = jsonResource.getJson().getAsJsonArray("overrides");
-                    for (JsonElement e : overrides) {
-                        JsonObject override = e.getAsJsonObject();
-                        JsonObject predicate = override.getAsJsonObject("predicate");
-                        if (predicate.has("custom_model_data")) {
-                            int customModelData = predicate.get("custom_model_data").getAsInt();
-                            String model = override.get("model").getAsString();
-                            NamespacedKey modelKey = NamespacedKey.fromString(model);
-                            String vanillaItem = path.toString().substring("assets/minecraft/models/item/".length());
-                            vanillaItem = vanillaItem.substring(0, vanillaItem.length() - ".json".length());
-                            Material vanillaMaterial = Material.matchMaterial(vanillaItem);
-                            itemModels.put(modelKey, new BakedItemModel(vanillaMaterial, customModelData));
-                        }
-                    }
-                }
-            }
-        }
-
-        return itemModels;
-    }
-
-    private static Map<FontCharIdentifier, BakedFontChar> bakeFontChars(ResourcePack pack) throws IOException {
-        Map<FontCharIdentifier, BakedFontChar> fontChars = new HashMap<>();
-
-        Path assetsPath = pack.getPath("assets");
-        if (Files.notExists(assetsPath)) {
-            return fontChars;
-        }
-        try (Stream<Path> s = Files.list(assetsPath)) {
-            for (Path namespacePath : s
-                .filter(Files::isDirectory)
-                .filter(path -> Files.isDirectory(path.resolve("font")))
-                .toList()) {
-                try (Stream<Path> s2 = Files.list(namespacePath.resolve("font"))) {
-                    for (Path path : s2
-                        .filter(path -> path.toString().endsWith(".json"))
-                        .toList()) {
-                        JsonResource jsonResource = new JsonResource(pack, path);
-                        for (JsonElement element : jsonResource.getJson().getAsJsonArray("providers")) {
-                            JsonObject provider = element.getAsJsonObject();
-
-                            String namespace = namespacePath.getFileName().toString();
-                            String fontName = path.getFileName().toString();
-                            fontName = fontName.substring(0, fontName.length() - ".json".length());
-                            NamespacedKey fontKey = new NamespacedKey(namespace, fontName);
-
-                            switch (provider.get("type").getAsString()) {
-                                case "bitmap" -> {
-                                    JsonArray chars = provider.getAsJsonArray("chars");
-                                    if (chars.size() != 1) {
-                                        continue;
-                                    }
-                                    String charString = chars.get(0).getAsString();
-                                    if (charString.length() != 1) {
-                                        continue;
-                                    }
-                                    int ascent = provider.get("ascent").getAsInt();
-                                    Integer height = provider.has("height") ? provider.get("height").getAsInt() : null;
-                                    NamespacedKey textureKey = NamespacedKey.fromString(provider.get("file").getAsString());
-
-                                    BitmapFontCharIdentifier identifier = new BitmapFontCharIdentifier(textureKey, height, ascent);
-                                    fontChars.put(identifier, new BakedFontChar(fontKey, charString.charAt(0)));
-                                }
-                                case "space" -> {
-                                    JsonObject advances = provider.getAsJsonObject("advances");
-                                    for (Map.Entry<String, JsonElement> entry : advances.entrySet()) {
-                                        String charStr = entry.getKey();
-                                        if (charStr.length() != 1) {
-                                            continue;
-                                        }
-                                        int advance = entry.getValue().getAsInt();
-
-                                        SpaceFontCharIdentifier identifier = new SpaceFontCharIdentifier(advance);
-                                        fontChars.put(identifier, new BakedFontChar(fontKey, charStr.charAt(0)));
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        return fontChars;
+        pack.flush();
+        PackIndex index = pack.getIndex();
+        return new BakedResourcePack(index.getItemModels(), index.getFontChars());
     }
 }
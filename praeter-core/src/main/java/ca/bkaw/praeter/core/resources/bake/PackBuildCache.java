@@ -0,0 +1,356 @@
+package ca.bkaw.praeter.core.resources.bake;
+
+import ca.bkaw.praeter.core.Praeter;
+import ca.bkaw.praeter.core.resources.font.BitmapFontCharIdentifier;
+import ca.bkaw.praeter.core.resources.font.FontCharIdentifier;
+import ca.bkaw.praeter.core.resources.font.SpaceFontCharIdentifier;
+import ca.bkaw.praeter.core.resources.pack.Pack;
+import ca.bkaw.praeter.core.resources.pack.memory.MemoryFileSystem;
+import ca.bkaw.praeter.core.resources.pack.zip.RawZipEntry;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A cache that allows a pack that was written and baked during a previous startup
+ * to be reused when the pack has the same contents.
+ * <p>
+ * Inputs that affect how packs are written, for example the compression settings,
+ * are added before the packs are built. Once all assets have been included, the
+ * fingerprint of a pack is computed from those inputs and the paths and contents
+ * of all files in the pack. The fingerprint is stored in a compact binary index
+ * file next to the pack together with the baked mappings of the pack. When the
+ * fingerprint matches on the next startup, the pack file and the mappings can be
+ * reused without baking, optimizing or writing the pack again.
+ * <p>
+ * The same cache is used for all packs, each pack has its own index file.
+ */
+public class PackBuildCache {
+    /**
+     * The version of the index format and of the way packs are built. Increment this
+     * to invalidate all existing caches.
+     */
+    private static final int FORMAT_VERSION = 4;
+    private static final int MAGIC = 0x50524958; // PRIX
+    private static final int BITMAP = 0;
+    private static final int SPACE = 1;
+
+    private final boolean enabled;
+    private final Hasher hasher = Hashing.sha256().newHasher();
+    private String inputsHash;
+
+    /**
+     * Create a new {@link PackBuildCache}.
+     *
+     * @param enabled Whether the cache is enabled. A disabled cache ignores all
+     *                inputs and never reuses a pack.
+     */
+    public PackBuildCache(boolean enabled) {
+        this.enabled = enabled;
+        this.addInput("format_version", String.valueOf(FORMAT_VERSION));
+    }
+
+    /**
+     * Get whether the cache is enabled.
+     *
+     * @return Whether enabled.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Add an input that affects how packs are built, other than the files in the
+     * packs.
+     *
+     * @param name The name of the input.
+     * @param value The value of the input.
+     * @throws IllegalStateException If a fingerprint has already been computed.
+     */
+    public synchronized void addInput(@NotNull String name, @NotNull String value) {
+        if (!this.enabled) {
+            return;
+        }
+        if (this.inputsHash != null) {
+            throw new IllegalStateException("Can not add inputs after a fingerprint has been computed.");
+        }
+        this.hasher.putInt(name.length()).putString(name, StandardCharsets.UTF_8);
+        this.hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compute the fingerprint of a pack, from the inputs that have been added and the
+     * files in the pack. No more inputs can be added after this method has been
+     * called.
+     * <p>
+     * The files are hashed by their sorted paths and contents. Files in packs stored
+     * in memory that have not been modified since they were read from a zip file are
+     * hashed by the checksum and size of their raw entry, without decompressing them.
+     * <p>
+     * The pack must not be modified while the fingerprint is computed.
+     *
+     * @param pack The pack.
+     * @return The fingerprint.
+     * @throws IOException If an I/O error occurs.
+     */
+    @NotNull
+    public String getFingerprint(@NotNull Pack pack) throws IOException {
+        if (!this.enabled) {
+            return "";
+        }
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(this.getInputsHash(), StandardCharsets.UTF_8);
+
+        pack.flush();
+        Path root = pack.getRoot();
+        String separator = root.getFileSystem().getSeparator();
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(Files::isRegularFile)
+                .sorted(Comparator.comparing(path -> root.relativize(path).toString()))
+                .toList();
+        }
+        for (Path file : files) {
+            String path = root.relativize(file).toString().replace(separator, "/");
+            hasher.putInt(path.length()).putString(path, StandardCharsets.UTF_8);
+            RawZipEntry entry = file.getFileSystem() instanceof MemoryFileSystem memoryFileSystem
+                ? memoryFileSystem.getRawEntry(file) : null;
+            if (entry != null) {
+                hasher.putByte((byte) 0).putLong(entry.crc()).putLong(entry.size());
+            } else {
+                byte[] bytes = Files.readAllBytes(file);
+                hasher.putByte((byte) 1).putInt(bytes.length).putBytes(bytes);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private synchronized String getInputsHash() {
+        if (this.inputsHash == null) {
+            this.inputsHash = this.hasher.hash().toString();
+        }
+        return this.inputsHash;
+    }
+
+    /**
+     * Get the path of the index file for a pack file. The index file is stored next
+     * to the pack file, with the {@code .index} extension instead of {@code .zip}.
+     *
+     * @param packFile The path of the pack file.
+     * @return The path of the index file.
+     */
+    @NotNull
+    public static Path getIndexPath(@NotNull Path packFile) {
+        String fileName = packFile.getFileName().toString();
+        if (fileName.endsWith(".zip")) {
+            fileName = fileName.substring(0, fileName.length() - ".zip".length());
+        }
+        return packFile.resolveSibling(fileName + ".index");
+    }
+
+    /**
+     * Load the baked pack from the cache.
+     * <p>
+     * The baked pack is only returned if the fingerprint matches the fingerprint of
+     * the cached pack, and the pack file has not been changed since it was written.
+     *
+     * @param packFile The path of the pack file.
+     * @param fingerprint The {@link #getFingerprint(Pack) fingerprint} of the pack.
+     * @return The baked pack with its file set, or null if the cache could not be used.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Nullable
+    public BakedResourcePack load(@NotNull Path packFile, @NotNull String fingerprint) throws IOException {
+        Path indexPath = getIndexPath(packFile);
+        if (!this.enabled || !Files.isRegularFile(indexPath) || !Files.isRegularFile(packFile)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            return readIndex(in, packFile, fingerprint);
+        } catch (EOFException | RuntimeException e) {
+            Praeter.get().getLogger().warning("Ignoring invalid pack build cache index " + indexPath);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static BakedResourcePack readIndex(DataInputStream in, Path packFile, String fingerprint) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        if (!fingerprint.equals(in.readUTF())) {
+            return null;
+        }
+
+        long size = in.readLong();
+        long modified = in.readLong();
+        if (Files.size(packFile) != size || Files.getLastModifiedTime(packFile).toMillis() != modified) {
+            // The pack file has been changed or replaced
+            return null;
+        }
+        byte[] sha1 = new byte[in.readUnsignedByte()];
+        in.readFully(sha1);
+
+        // Keys, materials and texture keys are stored once in a string table
+        String[] strings = new String[readVarInt(in)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+
+        int itemModelCount = readVarInt(in);
+        Map<NamespacedKey, BakedItemModel> itemModels = new HashMap<>(itemModelCount * 2);
+        for (int i = 0; i < itemModelCount; i++) {
+            NamespacedKey key = NamespacedKey.fromString(strings[readVarInt(in)]);
+            int materialIndex = readVarInt(in);
+            Material material = materialIndex == 0 ? null : Material.getMaterial(strings[materialIndex - 1]);
+            int customModelData = readVarInt(in);
+            itemModels.put(key, new BakedItemModel(material, customModelData));
+        }
+
+        int fontCharCount = readVarInt(in);
+        Map<FontCharIdentifier, BakedFontChar> fontChars = new HashMap<>(fontCharCount * 2);
+        for (int i = 0; i < fontCharCount; i++) {
+            FontCharIdentifier identifier = switch (in.readUnsignedByte()) {
+                case BITMAP -> {
+                    NamespacedKey texture = NamespacedKey.fromString(strings[readVarInt(in)]);
+                    Integer height = in.readBoolean() ? in.readInt() : null;
+                    int ascent = in.readInt();
+                    yield new BitmapFontCharIdentifier(texture, height, ascent);
+                }
+                case SPACE -> new SpaceFontCharIdentifier(in.readInt());
+                default -> throw new IllegalArgumentException("Unknown font char type in pack build cache.");
+            };
+            NamespacedKey fontKey = NamespacedKey.fromString(strings[readVarInt(in)]);
+            char character = in.readChar();
+            fontChars.put(identifier, new BakedFontChar(fontKey, character));
+        }
+
+        BakedResourcePack bakedPack = new BakedResourcePack(itemModels, fontChars);
+        bakedPack.setFile(new BakedPackFile(packFile, size, sha1));
+        return bakedPack;
+    }
+
+    /**
+     * Save the baked pack to the cache so that it can be reused during the next
+     * startup if the pack has the same contents.
+     *
+     * @param bakedPack The baked pack. The file of the pack must be set.
+     * @param fingerprint The {@link #getFingerprint(Pack) fingerprint} of the pack
+     *                    before it was baked.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void save(@NotNull BakedResourcePack bakedPack, @NotNull String fingerprint) throws IOException {
+        if (!this.enabled) {
+            return;
+        }
+        BakedPackFile packFile = bakedPack.getFile();
+        if (packFile == null) {
+            throw new IllegalArgumentException("The pack has not been written to a file.");
+        }
+
+        Object2IntMap<String> strings = new Object2IntLinkedOpenHashMap<>();
+        strings.defaultReturnValue(-1);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+
+        Map<NamespacedKey, BakedItemModel> itemModels = bakedPack.getItemModels();
+        writeVarInt(out, itemModels.size());
+        for (Map.Entry<NamespacedKey, BakedItemModel> entry : itemModels.entrySet()) {
+            writeVarInt(out, stringIndex(strings, entry.getKey().toString()));
+            Material material = entry.getValue().material();
+            writeVarInt(out, material == null ? 0 : stringIndex(strings, material.name()) + 1);
+            writeVarInt(out, entry.getValue().customModelData());
+        }
+
+        List<Map.Entry<FontCharIdentifier, BakedFontChar>> fontChars = bakedPack.getFontChars().entrySet().stream()
+            .filter(entry -> entry.getKey() instanceof BitmapFontCharIdentifier
+                || entry.getKey() instanceof SpaceFontCharIdentifier)
+            .toList();
+        writeVarInt(out, fontChars.size());
+        for (Map.Entry<FontCharIdentifier, BakedFontChar> entry : fontChars) {
+            if (entry.getKey() instanceof BitmapFontCharIdentifier bitmap) {
+                out.writeByte(BITMAP);
+                writeVarInt(out, stringIndex(strings, bitmap.textureKey().toString()));
+                out.writeBoolean(bitmap.height() != null);
+                if (bitmap.height() != null) {
+                    out.writeInt(bitmap.height());
+                }
+                out.writeInt(bitmap.ascent());
+            } else if (entry.getKey() instanceof SpaceFontCharIdentifier space) {
+                out.writeByte(SPACE);
+                out.writeInt(space.advance());
+            }
+            writeVarInt(out, stringIndex(strings, entry.getValue().fontKey().toString()));
+            out.writeChar(entry.getValue().character());
+        }
+        out.flush();
+
+        try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(getIndexPath(packFile.path()))))) {
+            file.writeInt(MAGIC);
+            file.writeInt(FORMAT_VERSION);
+            file.writeUTF(fingerprint);
+            file.writeLong(packFile.size());
+            file.writeLong(Files.getLastModifiedTime(packFile.path()).toMillis());
+            file.writeByte(packFile.sha1().length);
+            file.write(packFile.sha1());
+            writeVarInt(file, strings.size());
+            for (String string : strings.keySet()) {
+                file.writeUTF(string);
+            }
+            body.writeTo(file);
+        }
+    }
+
+    private static int stringIndex(Object2IntMap<String> strings, String string) {
+        int index = strings.getInt(string);
+        if (index == -1) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+        return index;
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable length integer in pack build cache.");
+    }
+}
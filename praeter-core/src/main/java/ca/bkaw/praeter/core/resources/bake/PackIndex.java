@@ -0,0 +1,314 @@
+package ca.bkaw.praeter.core.resources.bake;
+
+import ca.bkaw.praeter.core.resources.font.BitmapFontCharIdentifier;
+import ca.bkaw.praeter.core.resources.font.FontCharIdentifier;
+import ca.bkaw.praeter.core.resources.font.SpaceFontCharIdentifier;
+import ca.bkaw.praeter.core.resources.pack.JsonResource;
+import ca.bkaw.praeter.core.resources.pack.ResourcePack;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * An index of the item models and font characters in a {@link ResourcePack}, which
+ * is what a {@link BakedResourcePack} is created from.
+ * <p>
+ * The index is kept up to date while the pack is built, as item models and fonts
+ * are written, so that baking the pack does not have to scan and parse the files
+ * again. The contents of each file are indexed separately, so that a file that is
+ * written again replaces what it contributed before.
+ */
+@ApiStatus.Internal
+public class PackIndex {
+    private static final String ITEM_MODELS_PATH = "assets/minecraft/models/item/";
+
+    /**
+     * The item models added by each item model file, sorted by path.
+     */
+    private final Map<String, Map<NamespacedKey, BakedItemModel>> itemModelFiles = new TreeMap<>();
+    /**
+     * The font characters added by each font file, sorted by path.
+     */
+    private final Map<String, Map<FontCharIdentifier, BakedFontChar>> fontCharFiles = new TreeMap<>();
+    /**
+     * The font characters in each glyph atlas texture, since the original textures
+     * of the characters can not be read from the providers that use an atlas.
+     */
+    private final Map<NamespacedKey, Map<Character, BitmapFontCharIdentifier>> atlases = new HashMap<>();
+
+    /**
+     * Create a copy of this index that can be updated separately.
+     *
+     * @return The copy.
+     */
+    public PackIndex copy() {
+        PackIndex copy = new PackIndex();
+        // The maps of each file are replaced and never modified, so they can be shared
+        copy.itemModelFiles.putAll(this.itemModelFiles);
+        copy.fontCharFiles.putAll(this.fontCharFiles);
+        copy.atlases.putAll(this.atlases);
+        return copy;
+    }
+
+    /**
+     * Register the font characters in a glyph atlas texture, so that bitmap
+     * providers that use the atlas are indexed as those font characters.
+     * <p>
+     * This must be called before the fonts that use the atlas are written. Atlases
+     * are not known to indexes that are created by {@link #scan(ResourcePack)
+     * scanning} a pack.
+     *
+     * @param textureKey The key of the atlas texture.
+     * @param fontChars The font characters by the character they use in the atlas.
+     * @see ca.bkaw.praeter.core.resources.font.GlyphAtlasPacker
+     */
+    public void addAtlas(NamespacedKey textureKey, Map<Character, BitmapFontCharIdentifier> fontChars) {
+        this.atlases.put(textureKey, Map.copyOf(fontChars));
+    }
+
+    /**
+     * Create an index of all item models and fonts in the pack by scanning it.
+     *
+     * @param pack The pack.
+     * @return The index.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static PackIndex scan(ResourcePack pack) throws IOException {
+        PackIndex index = new PackIndex();
+
+        Path itemPath = pack.getPath(ITEM_MODELS_PATH);
+        if (Files.isDirectory(itemPath)) {
+            try (Stream<Path> s = Files.list(itemPath)) {
+                for (Path path : s.toList()) {
+                    index.indexFile(pack, path);
+                }
+            }
+        }
+
+        Path assetsPath = pack.getPath("assets");
+        if (Files.isDirectory(assetsPath)) {
+            try (Stream<Path> s = Files.list(assetsPath)) {
+                for (Path namespacePath : s
+                    .filter(path -> Files.isDirectory(path.resolve("font")))
+                    .toList()) {
+                    try (Stream<Path> s2 = Files.list(namespacePath.resolve("font"))) {
+                        for (Path path : s2.toList()) {
+                            index.indexFile(pack, path);
+                        }
+                    }
+                }
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Get whether a file contributes to the index.
+     *
+     * @param path The path of the file relative to the root of the pack, using
+     *             {@code /} as the separator.
+     * @return Whether the file is an item model or a font.
+     */
+    public static boolean isIndexed(String path) {
+        return isItemModel(path) || getFontKey(path) != null;
+    }
+
+    private static boolean isItemModel(String path) {
+        return path.startsWith(ITEM_MODELS_PATH)
+            && path.endsWith(".json")
+            && path.indexOf('/', ITEM_MODELS_PATH.length()) == -1;
+    }
+
+    /**
+     * Get the key of the font at a path.
+     *
+     * @param path The relative path.
+     * @return The key of the font, or null if the path is not a font.
+     */
+    @Nullable
+    private static NamespacedKey getFontKey(String path) {
+        String[] parts = path.split("/");
+        if (parts.length != 4 || !parts[0].equals("assets") || !parts[2].equals("font")
+            || !parts[3].endsWith(".json")) {
+            return null;
+        }
+        String name = parts[3].substring(0, parts[3].length() - ".json".length());
+        return new NamespacedKey(parts[1], name);
+    }
+
+    /**
+     * Read a file in the pack and index it if it is an item model or a font.
+     * <p>
+     * If the file does not exist, what it contributed before is removed.
+     *
+     * @param pack The pack.
+     * @param path The path of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void indexFile(ResourcePack pack, Path path) throws IOException {
+        String relative = relativize(pack, path);
+        if (!isIndexed(relative)) {
+            return;
+        }
+        if (Files.isRegularFile(path)) {
+            this.index(relative, new JsonResource(pack, path).getJson());
+        } else {
+            this.itemModelFiles.remove(relative);
+            this.fontCharFiles.remove(relative);
+        }
+    }
+
+    /**
+     * Index the contents of a file, replacing what was previously indexed for the
+     * file.
+     *
+     * @param pack The pack.
+     * @param path The path of the file.
+     * @param json The JSON contents of the file.
+     */
+    public void indexFile(ResourcePack pack, Path path, JsonObject json) {
+        String relative = relativize(pack, path);
+        if (isIndexed(relative)) {
+            this.index(relative, json);
+        }
+    }
+
+    /**
+     * Get the path of a file relative to the root of the pack, as used by
+     * {@link #isIndexed(String)}.
+     *
+     * @param pack The pack.
+     * @param path The path of the file.
+     * @return The relative path, using {@code /} as the separator.
+     */
+    public static String relativize(ResourcePack pack, Path path) {
+        Path root = pack.getRoot();
+        return root.relativize(path.normalize()).toString().replace(root.getFileSystem().getSeparator(), "/");
+    }
+
+    private void index(String path, JsonObject json) {
+        if (isItemModel(path)) {
+            this.itemModelFiles.put(path, readItemModels(path, json));
+            return;
+        }
+        NamespacedKey fontKey = getFontKey(path);
+        if (fontKey != null) {
+            this.fontCharFiles.put(path, readFontChars(fontKey, json));
+        }
+    }
+
+    private static Map<NamespacedKey, BakedItemModel> readItemModels(String path, JsonObject json) {
+        Map<NamespacedKey, BakedItemModel> itemModels = new HashMap<>();
+        if (!json.has("overrides")) {
+            return itemModels;
+        }
+        String vanillaItem = path.substring(ITEM_MODELS_PATH.length(), path.length() - ".json".length());
+        Material vanillaMaterial = Material.matchMaterial(vanillaItem);
+        for (JsonElement e : json.getAsJsonArray("overrides")) {
+            JsonObject override = e.getAsJsonObject();
+            JsonObject predicate = override.getAsJsonObject("predicate");
+            if (predicate.has("custom_model_data")) {
+                int customModelData = predicate.get("custom_model_data").getAsInt();
+                NamespacedKey modelKey = NamespacedKey.fromString(override.get("model").getAsString());
+                itemModels.put(modelKey, new BakedItemModel(vanillaMaterial, customModelData));
+            }
+        }
+        return itemModels;
+    }
+
+    private Map<FontCharIdentifier, BakedFontChar> readFontChars(NamespacedKey fontKey, JsonObject json) {
+        Map<FontCharIdentifier, BakedFontChar> fontChars = new HashMap<>();
+        if (!json.has("providers")) {
+            return fontChars;
+        }
+        for (JsonElement element : json.getAsJsonArray("providers")) {
+            JsonObject provider = element.getAsJsonObject();
+            switch (provider.get("type").getAsString()) {
+                case "bitmap" -> {
+                    JsonArray chars = provider.getAsJsonArray("chars");
+                    Map<Character, BitmapFontCharIdentifier> atlas
+                        = this.atlases.get(NamespacedKey.fromString(provider.get("file").getAsString()));
+                    if (atlas != null) {
+                        for (JsonElement row : chars) {
+                            String rowString = row.getAsString();
+                            for (int i = 0; i < rowString.length(); i++) {
+                                BitmapFontCharIdentifier identifier = atlas.get(rowString.charAt(i));
+                                if (identifier != null) {
+                                    fontChars.put(identifier, new BakedFontChar(fontKey, rowString.charAt(i)));
+                                }
+                            }
+                        }
+                        continue;
+                    }
+                    if (chars.size() != 1) {
+                        continue;
+                    }
+                    String charString = chars.get(0).getAsString();
+                    if (charString.length() != 1) {
+                        continue;
+                    }
+                    int ascent = provider.get("ascent").getAsInt();
+                    Integer height = provider.has("height") ? provider.get("height").getAsInt() : null;
+                    NamespacedKey textureKey = NamespacedKey.fromString(provider.get("file").getAsString());
+
+                    BitmapFontCharIdentifier identifier = new BitmapFontCharIdentifier(textureKey, height, ascent);
+                    fontChars.put(identifier, new BakedFontChar(fontKey, charString.charAt(0)));
+                }
+                case "space" -> {
+                    JsonObject advances = provider.getAsJsonObject("advances");
+                    for (Map.Entry<String, JsonElement> entry : advances.entrySet()) {
+                        String charStr = entry.getKey();
+                        if (charStr.length() != 1) {
+                            continue;
+                        }
+                        int advance = entry.getValue().getAsInt();
+
+                        SpaceFontCharIdentifier identifier = new SpaceFontCharIdentifier(advance);
+                        fontChars.put(identifier, new BakedFontChar(fontKey, charStr.charAt(0)));
+                    }
+                }
+            }
+        }
+        return fontChars;
+    }
+
+    /**
+     * Get all indexed item models.
+     * <p>
+     * If the same model is in multiple files, the file with the greatest path wins.
+     *
+     * @return A new map of the item models.
+     */
+    public Map<NamespacedKey, BakedItemModel> getItemModels() {
+        Map<NamespacedKey, BakedItemModel> itemModels = new HashMap<>();
+        this.itemModelFiles.values().forEach(itemModels::putAll);
+        return itemModels;
+    }
+
+    /**
+     * Get all indexed font characters.
+     * <p>
+     * If the same font character is in multiple fonts, the font with the greatest
+     * path wins.
+     *
+     * @return A new map of the font characters.
+     */
+    public Map<FontCharIdentifier, BakedFontChar> getFontChars() {
+        Map<FontCharIdentifier, BakedFontChar> fontChars = new HashMap<>();
+        this.fontCharFiles.values().forEach(fontChars::putAll);
+        return fontChars;
+    }
+}
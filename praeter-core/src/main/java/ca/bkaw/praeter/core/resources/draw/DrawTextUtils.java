@@ -11,6 +11,9 @@ import java.awt.image.BufferedImage;
 public class DrawTextUtils {
     /**
      * Draw text.
+     * <p>
+     * {@link BufferedImage#TYPE_INT_ARGB} images are drawn on directly using a
+     * {@link PixelBuffer}, other images are converted and written back.
      *
      * @param image The image to draw on.
      * @param x The x coordinate to start at.
@@ -20,27 +23,13 @@ public class DrawTextUtils {
      * @param font The font to use when drawing the text.
      */
     public static void drawText(BufferedImage image, int x, int y, String text, Color color, MapFont font) {
-        int startX = x;
-        for (char c : text.toCharArray()) {
-            if (c == '\n') {
-                x = startX;
-                y += font.getHeight() + 1;
-            }
-            MapFont.CharacterSprite characterSprite = font.getChar(c);
-            if (characterSprite == null) {
-                throw new IllegalArgumentException("Cannot draw the character: '"+ c +"'");
-            }
-
-            for(int rows = 0; rows < font.getHeight(); ++rows) {
-                for(int cols = 0; cols < characterSprite.getWidth(); ++cols) {
-                    if (characterSprite.get(rows, cols)) {
-                        image.setRGB(x + cols, y + rows, color.getRGB());
-                    }
-                }
-            }
-
-            x += characterSprite.getWidth() + 1;
+        if (PixelBuffer.canWrap(image)) {
+            PixelBuffer.wrap(image).drawText(text, x, y, color.getRGB(), font);
+            return;
         }
+        PixelBuffer buffer = PixelBuffer.read(image);
+        buffer.drawText(text, x, y, color.getRGB(), font);
+        image.setRGB(0, 0, buffer.getWidth(), buffer.getHeight(), buffer.toArray(), 0, buffer.getWidth());
     }
 
     /**
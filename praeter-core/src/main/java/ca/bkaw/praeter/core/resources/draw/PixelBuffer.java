@@ -0,0 +1,396 @@
+package ca.bkaw.praeter.core.resources.draw;
+
+import org.bukkit.map.MapFont;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * A raster engine that draws directly on the {@code int[]} pixels of an ARGB
+ * image.
+ * <p>
+ * Pixels are stored as non-premultiplied ARGB, like in a
+ * {@link BufferedImage#TYPE_INT_ARGB} image. All operations are clipped to the
+ * bounds of the buffer, so drawing partially outside the buffer only draws the part
+ * that is inside.
+ * <p>
+ * This is used instead of {@link java.awt.Graphics2D} and
+ * {@link BufferedImage#setRGB(int, int, int)} when generating gui textures, as
+ * those go through color model conversions for every pixel.
+ */
+public final class PixelBuffer {
+    private final BufferedImage image;
+    private final int[] pixels;
+    private final int offset;
+    private final int stride;
+    private final int width;
+    private final int height;
+
+    private PixelBuffer(BufferedImage image, int[] pixels, int offset, int stride) {
+        this.image = image;
+        this.pixels = pixels;
+        this.offset = offset;
+        this.stride = stride;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+    }
+
+    /**
+     * Create a new transparent {@link PixelBuffer} backed by a new
+     * {@link BufferedImage#TYPE_INT_ARGB} image.
+     *
+     * @param width The width, in pixels.
+     * @param height The height, in pixels.
+     */
+    public PixelBuffer(int width, int height) {
+        this(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+    }
+
+    private PixelBuffer(BufferedImage image) {
+        this(image, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0, image.getWidth());
+    }
+
+    /**
+     * Get whether an image can be {@link #wrap(BufferedImage) wrapped}.
+     *
+     * @param image The image.
+     * @return Whether the image is stored as ARGB ints.
+     */
+    public static boolean canWrap(@NotNull BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_INT_ARGB
+            && image.getRaster().getDataBuffer() instanceof DataBufferInt
+            && image.getSampleModel() instanceof SinglePixelPackedSampleModel;
+    }
+
+    /**
+     * Create a {@link PixelBuffer} that draws on an image. Changes to the buffer are
+     * visible in the image and the other way around.
+     * <p>
+     * Sub-images created using {@link BufferedImage#getSubimage(int, int, int, int)}
+     * may also be wrapped.
+     *
+     * @param image The image, which must be a {@link BufferedImage#TYPE_INT_ARGB} image.
+     * @return The pixel buffer.
+     * @throws IllegalArgumentException If the image can not be wrapped.
+     * @see #canWrap(BufferedImage)
+     */
+    @NotNull
+    public static PixelBuffer wrap(@NotNull BufferedImage image) {
+        if (!canWrap(image)) {
+            throw new IllegalArgumentException("Only TYPE_INT_ARGB images can be wrapped.");
+        }
+        WritableRaster raster = image.getRaster();
+        DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+        int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        // Sub-images share the data buffer, the sample model translation is the
+        // negated position of the sub-image in the parent
+        int offset = dataBuffer.getOffset()
+            - raster.getSampleModelTranslateY() * stride
+            - raster.getSampleModelTranslateX();
+        return new PixelBuffer(image, dataBuffer.getData(), offset, stride);
+    }
+
+    /**
+     * Get a {@link PixelBuffer} to read the pixels of an image from.
+     * <p>
+     * The image is {@link #wrap(BufferedImage) wrapped} when possible, otherwise the
+     * pixels are copied to a new buffer, in which case changes to the returned buffer
+     * are not visible in the image.
+     *
+     * @param image The image.
+     * @return The pixel buffer.
+     */
+    @NotNull
+    public static PixelBuffer read(@NotNull BufferedImage image) {
+        if (canWrap(image)) {
+            return wrap(image);
+        }
+        PixelBuffer buffer = new PixelBuffer(image.getWidth(), image.getHeight());
+        image.getRGB(0, 0, buffer.width, buffer.height, buffer.pixels, 0, buffer.width);
+        return buffer;
+    }
+
+    /**
+     * Get an image with the same pixels that can be {@link #wrap(BufferedImage)
+     * wrapped}, converting it if it is stored in another way.
+     *
+     * @param image The image.
+     * @return The image, or a converted copy.
+     */
+    @NotNull
+    public static BufferedImage toIntArgb(@NotNull BufferedImage image) {
+        return canWrap(image) ? image : read(image).getImage();
+    }
+
+    /**
+     * Get the image that this buffer draws on.
+     *
+     * @return The image.
+     */
+    @NotNull
+    public BufferedImage getImage() {
+        return this.image;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Get the ARGB color of a pixel.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return The color.
+     * @throws IndexOutOfBoundsException If the pixel is outside the buffer.
+     */
+    public int getPixel(int x, int y) {
+        return this.pixels[this.index(x, y)];
+    }
+
+    /**
+     * Set the ARGB color of a pixel, replacing the previous color.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @param argb The color.
+     * @throws IndexOutOfBoundsException If the pixel is outside the buffer.
+     */
+    public void setPixel(int x, int y, int argb) {
+        this.pixels[this.index(x, y)] = argb;
+    }
+
+    /**
+     * Copy the pixels to a new array, row by row without padding.
+     *
+     * @return The array of ARGB colors.
+     */
+    @NotNull
+    public int[] toArray() {
+        int[] array = new int[this.width * this.height];
+        for (int y = 0; y < this.height; y++) {
+            System.arraycopy(this.pixels, this.offset + y * this.stride, array, y * this.width, this.width);
+        }
+        return array;
+    }
+
+    private int index(int x, int y) {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height) {
+            throw new IndexOutOfBoundsException("The pixel (" + x + ", " + y + ") is outside the "
+                + this.width + "x" + this.height + " buffer.");
+        }
+        return this.offset + y * this.stride + x;
+    }
+
+    /**
+     * Fill an area with a color, replacing the pixels in the area.
+     *
+     * @param x The x coordinate of the area.
+     * @param y The y coordinate of the area.
+     * @param width The width of the area.
+     * @param height The height of the area.
+     * @param argb The color.
+     */
+    public void fill(int x, int y, int width, int height, int argb) {
+        int startX = Math.max(x, 0);
+        int startY = Math.max(y, 0);
+        int endX = Math.min(x + width, this.width);
+        int endY = Math.min(y + height, this.height);
+        if (startX >= endX) {
+            return;
+        }
+        for (int row = startY; row < endY; row++) {
+            int rowStart = this.offset + row * this.stride;
+            Arrays.fill(this.pixels, rowStart + startX, rowStart + endX, argb);
+        }
+    }
+
+    /**
+     * Replace the pixels in an area with transparency.
+     *
+     * @param x The x coordinate of the area.
+     * @param y The y coordinate of the area.
+     * @param width The width of the area.
+     * @param height The height of the area.
+     */
+    public void carve(int x, int y, int width, int height) {
+        this.fill(x, y, width, height, 0);
+    }
+
+    /**
+     * Draw all of another buffer onto this buffer, blending with the pixels below
+     * like {@link java.awt.Graphics2D#drawImage(java.awt.Image, int, int, java.awt.image.ImageObserver)}.
+     *
+     * @param source The buffer to draw.
+     * @param x The x coordinate to draw at.
+     * @param y The y coordinate to draw at.
+     */
+    public void blit(@NotNull PixelBuffer source, int x, int y) {
+        this.blit(source, 0, 0, source.width, source.height, x, y);
+    }
+
+    /**
+     * Draw an area of another buffer onto this buffer, blending with the pixels below
+     * like {@link java.awt.Graphics2D#drawImage(java.awt.Image, int, int, java.awt.image.ImageObserver)}.
+     *
+     * @param source The buffer to draw from.
+     * @param sourceX The x coordinate of the area in the source buffer.
+     * @param sourceY The y coordinate of the area in the source buffer.
+     * @param width The width of the area.
+     * @param height The height of the area.
+     * @param x The x coordinate to draw at.
+     * @param y The y coordinate to draw at.
+     */
+    public void blit(@NotNull PixelBuffer source, int sourceX, int sourceY, int width, int height, int x, int y) {
+        // Clip to the source
+        if (sourceX < 0) {
+            width += sourceX;
+            x -= sourceX;
+            sourceX = 0;
+        }
+        if (sourceY < 0) {
+            height += sourceY;
+            y -= sourceY;
+            sourceY = 0;
+        }
+        width = Math.min(width, source.width - sourceX);
+        height = Math.min(height, source.height - sourceY);
+
+        // Clip to this buffer
+        if (x < 0) {
+            width += x;
+            sourceX -= x;
+            x = 0;
+        }
+        if (y < 0) {
+            height += y;
+            sourceY -= y;
+            y = 0;
+        }
+        width = Math.min(width, this.width - x);
+        height = Math.min(height, this.height - y);
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        int[] src = source.pixels;
+        int[] dst = this.pixels;
+        for (int row = 0; row < height; row++) {
+            int srcIndex = source.offset + (sourceY + row) * source.stride + sourceX;
+            int dstIndex = this.offset + (y + row) * this.stride + x;
+            for (int col = 0; col < width; col++) {
+                int color = src[srcIndex + col];
+                int alpha = color >>> 24;
+                if (alpha == 0xFF) {
+                    dst[dstIndex + col] = color;
+                } else if (alpha != 0) {
+                    dst[dstIndex + col] = blend(color, dst[dstIndex + col]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw a color over another color using source-over compositing of
+     * non-premultiplied colors.
+     *
+     * @param source The color to draw.
+     * @param destination The color to draw over.
+     * @return The resulting color.
+     */
+    public static int blend(int source, int destination) {
+        int sourceAlpha = source >>> 24;
+        if (sourceAlpha == 0xFF) {
+            return source;
+        }
+        if (sourceAlpha == 0) {
+            return destination;
+        }
+        int destinationAlpha = destination >>> 24;
+        if (destinationAlpha == 0) {
+            return source;
+        }
+        // The part of the destination that shows through, out of 255
+        int below = (destinationAlpha * (255 - sourceAlpha) + 127) / 255;
+        int alpha = sourceAlpha + below;
+        int half = alpha / 2;
+        int red = (((source >> 16) & 0xFF) * sourceAlpha + ((destination >> 16) & 0xFF) * below + half) / alpha;
+        int green = (((source >> 8) & 0xFF) * sourceAlpha + ((destination >> 8) & 0xFF) * below + half) / alpha;
+        int blue = ((source & 0xFF) * sourceAlpha + (destination & 0xFF) * below + half) / alpha;
+        return alpha << 24 | red << 16 | green << 8 | blue;
+    }
+
+    /**
+     * Draw text by setting the pixels of each character to a color.
+     * <p>
+     * The '\n' character can be used to go to the next line.
+     *
+     * @param text The text to draw.
+     * @param x The x coordinate to start at.
+     * @param y The y coordinate to start at.
+     * @param argb The color to draw the text as.
+     * @param font The font to use when drawing the text.
+     * @throws IllegalArgumentException If the font can not draw a character.
+     */
+    public void drawText(@NotNull String text, int x, int y, int argb, @NotNull MapFont font) {
+        int startX = x;
+        int fontHeight = font.getHeight();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                x = startX;
+                y += fontHeight + 1;
+            }
+            MapFont.CharacterSprite sprite = font.getChar(c);
+            if (sprite == null) {
+                throw new IllegalArgumentException("Cannot draw the character: '"+ c +"'");
+            }
+            this.drawGlyph(sprite, fontHeight, x, y, argb);
+            x += sprite.getWidth() + 1;
+        }
+    }
+
+    private void drawGlyph(MapFont.CharacterSprite sprite, int fontHeight, int x, int y, int argb) {
+        int startCol = Math.max(0, -x);
+        int endCol = Math.min(sprite.getWidth(), this.width - x);
+        int startRow = Math.max(0, -y);
+        int endRow = Math.min(fontHeight, this.height - y);
+        for (int row = startRow; row < endRow; row++) {
+            int rowStart = this.offset + (y + row) * this.stride + x;
+            for (int col = startCol; col < endCol; col++) {
+                if (sprite.get(row, col)) {
+                    this.pixels[rowStart + col] = argb;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the width of the buffer without the fully transparent columns to the
+     * right.
+     *
+     * @return The width, or 0 if all pixels are transparent.
+     */
+    public int getOpaqueWidth() {
+        int opaqueWidth = 0;
+        for (int y = 0; y < this.height && opaqueWidth < this.width; y++) {
+            int rowStart = this.offset + y * this.stride;
+            // Only the columns to the right of the widest row so far have to be checked
+            for (int x = this.width - 1; x >= opaqueWidth; x--) {
+                if ((this.pixels[rowStart + x] & 0xFF000000) != 0) {
+                    opaqueWidth = x + 1;
+                    break;
+                }
+            }
+        }
+        return opaqueWidth;
+    }
+}
@@ -6,7 +6,10 @@ import ca.bkaw.praeter.core.resources.draw.DrawOrigin;
 import ca.bkaw.praeter.core.resources.draw.DrawOriginResolver;
 import ca.bkaw.praeter.core.resources.draw.DrawTextUtils;
 import ca.bkaw.praeter.core.resources.draw.Drawable;
+import ca.bkaw.praeter.core.resources.draw.PixelBuffer;
 import ca.bkaw.praeter.core.resources.pack.ResourcePack;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.bukkit.NamespacedKey;
 import org.bukkit.map.MapFont;
 import org.jetbrains.annotations.Contract;
@@ -25,7 +28,8 @@ import java.util.List;
  * An abstract builder for a {@link FontSequence}.
  */
 public abstract class AbstractFontSequenceBuilder<T extends AbstractFontSequenceBuilder<T>> implements Drawable<T> {
-    private static int nextGeneratedFilename = 1;
+    private static final NamespacedKey SPLIT_TEXTURE = new NamespacedKey(Praeter.NAMESPACE, "split.png");
+    private static byte[] splitTextureBytes;
     private final ResourcePackList resourcePacks;
     private final List<Font> fonts;
     private final List<FontCharIdentifier> fontChars = new ArrayList<>();
@@ -39,7 +43,7 @@ public abstract class AbstractFontSequenceBuilder<T extends AbstractFontSequence
         this.origin = origin;
         this.fonts = new ArrayList<>(this.resourcePacks.size());
         for (ResourcePack pack : this.resourcePacks) {
-            this.fonts.add(new Font(pack, fontKey));
+            this.fonts.add(pack.getFont(fontKey));
         }
     }
 
@@ -101,12 +105,28 @@ public abstract class AbstractFontSequenceBuilder<T extends AbstractFontSequence
         // We create what is known as a "splitting" character. This character is large
         // enough that rendering is split, causing predictable z-index ordering.
 
-        NamespacedKey key = new NamespacedKey(Praeter.NAMESPACE, "split.png");
-
         // A height of -2 means the character will shift left enough to cancel out its
         // own shift to the right, effectively making it a zero-width character.
-        BitmapFontCharIdentifier fontChar = new BitmapFontCharIdentifier(key, -2, -Short.MAX_VALUE);
+        BitmapFontCharIdentifier fontChar = new BitmapFontCharIdentifier(SPLIT_TEXTURE, -2, -Short.MAX_VALUE);
         if (!this.hasNewLayerChar) {
+            // The texture is the same for all builders, only write it once per pack
+            for (ResourcePack resourcePack : this.resourcePacks) {
+                Path path = resourcePack.getTexturePath(SPLIT_TEXTURE);
+                if (Files.notExists(path)) {
+                    Files.createDirectories(path.getParent());
+                    Files.write(path, getSplitTextureBytes());
+                }
+            }
+            for (Font font : this.fonts) {
+                font.addFontChar(fontChar);
+            }
+            this.hasNewLayerChar = true;
+        }
+        this.fontChars.add(fontChar);
+    }
+
+    private static byte[] getSplitTextureBytes() throws IOException {
+        if (splitTextureBytes == null) {
             // A transparent 256x256 image is large enough to split rendering.
             BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
 
@@ -117,18 +137,52 @@ public abstract class AbstractFontSequenceBuilder<T extends AbstractFontSequence
 
             ByteArrayOutputStream stream = new ByteArrayOutputStream();
             ImageIO.write(image, "png", stream);
-            byte[] bytes = stream.toByteArray();
-            for (ResourcePack resourcePack : this.resourcePacks) {
-                Path path = resourcePack.getTexturePath(key);
-                Files.createDirectories(path.getParent());
-                Files.write(path, bytes);
+            splitTextureBytes = stream.toByteArray();
+        }
+        return splitTextureBytes;
+    }
+
+    /**
+     * Write a texture to all packs, unless it already exists.
+     *
+     * @param textureKey The key of the texture.
+     * @param image The image to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeTexture(NamespacedKey textureKey, BufferedImage image) throws IOException {
+        byte[] bytes = null;
+        for (ResourcePack resourcePack : this.resourcePacks) {
+            Path path = resourcePack.getTexturePath(textureKey);
+            if (Files.exists(path)) {
+                continue;
             }
-            for (Font font : this.fonts) {
-                font.addFontChar(fontChar);
+            if (bytes == null) {
+                ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                ImageIO.write(image, "png", stream);
+                bytes = stream.toByteArray();
             }
-            this.hasNewLayerChar = true;
+            Files.createDirectories(path.getParent());
+            Files.write(path, bytes);
         }
-        this.fontChars.add(fontChar);
+    }
+
+    /**
+     * Get the key of a generated texture for the image. The key is derived from the
+     * pixels of the image, so identical images share one texture.
+     *
+     * @param image The image.
+     * @return The texture key.
+     */
+    public static NamespacedKey getGeneratedTextureKey(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = PixelBuffer.read(image).toArray();
+        Hasher hasher = Hashing.sha256().newHasher(8 + pixels.length * 4);
+        hasher.putInt(width).putInt(height);
+        for (int pixel : pixels) {
+            hasher.putInt(pixel);
+        }
+        return new NamespacedKey(Praeter.GENERATED_NAMESPACE, hasher.hash() + ".png");
     }
 
     /**
@@ -173,8 +227,7 @@ public abstract class AbstractFontSequenceBuilder<T extends AbstractFontSequence
         int ascent = -y;
 
         // Read the texture
-        Path texturePath = this.resourcePacks.getTexturePath(textureKey);
-        BufferedImage image = ImageIO.read(Files.newInputStream(texturePath));
+        BufferedImage image = this.resourcePacks.readTexture(textureKey);
         int height = Math.max(image.getWidth(), image.getHeight());
 
         // Bitmap font providers don't allow the ascent to be larger than the height of
@@ -186,11 +239,10 @@ public abstract class AbstractFontSequenceBuilder<T extends AbstractFontSequence
 
         // If the current image isn't already the expected height
         if (image.getHeight() != height) {
-            BufferedImage createdImage = new BufferedImage(image.getWidth(), height, BufferedImage.TYPE_INT_ARGB);
-            Graphics graphics = createdImage.getGraphics();
+            PixelBuffer createdImage = new PixelBuffer(image.getWidth(), height);
 
             // Draw the image in the top-left corner.
-            graphics.drawImage(image, 0, 0, null);
+            createdImage.blit(PixelBuffer.read(image), 0, 0);
 
             // Create the new key for the image
             String createdKey = textureKey.getKey();
@@ -201,16 +253,8 @@ public abstract class AbstractFontSequenceBuilder<T extends AbstractFontSequence
                 + textureKey.getKey().substring(extIndex);
             textureKey = new NamespacedKey(Praeter.GENERATED_NAMESPACE, createdKey);
 
-            // Save the image
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            ImageIO.write(createdImage, "png", stream);
-            byte[] bytes = stream.toByteArray();
             // Save the image to all packs
-            for (ResourcePack resourcePack : this.resourcePacks) {
-                Path path = resourcePack.getTexturePath(textureKey);
-                Files.createDirectories(path.getParent());
-                Files.write(path, bytes);
-            }
+            this.writeTexture(textureKey, createdImage.getImage());
         }
 
         // Add the font character to the fonts
@@ -236,31 +280,15 @@ public abstract class AbstractFontSequenceBuilder<T extends AbstractFontSequence
      */
     public static int getEffectiveWidth(BufferedImage image) {
         // Don't count transparent columns to the right
-        int x;
-        for (x = image.getWidth() - 1; x >= 0; x--) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                int argb = image.getRGB(x, y);
-                int alpha = argb & 0xFF000000;
-                if (alpha != 0) {
-                    return x + 1;
-                }
-            }
-        }
-        return x + 1;
+        return PixelBuffer.read(image).getOpaqueWidth();
     }
 
     @Override
     public T drawImage(BufferedImage image, int x, int y) throws IOException {
-        // Write the image as a texture in the resource packs
-        NamespacedKey textureKey = new NamespacedKey(Praeter.GENERATED_NAMESPACE, nextGeneratedFilename++ + ".png");
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        ImageIO.write(image, "png", stream);
-        byte[] bytes = stream.toByteArray();
-        for (ResourcePack resourcePack : this.resourcePacks) {
-            Path texturePath = resourcePack.getTexturePath(textureKey);
-            Files.createDirectories(texturePath.getParent());
-            Files.write(texturePath, bytes);
-        }
+        // Write the image as a texture in the resource packs. Identical images share
+        // the same texture, and therefore also the same font character.
+        NamespacedKey textureKey = getGeneratedTextureKey(image);
+        this.writeTexture(textureKey, image);
         // Then draw the image from that texture
         return drawImage(textureKey, x, y);
     }
@@ -270,12 +298,12 @@ public abstract class AbstractFontSequenceBuilder<T extends AbstractFontSequence
         // Create an image to draw the text on
         int width = DrawTextUtils.getTextWidth(text, font);
         int height = DrawTextUtils.getTextHeight(text, font);
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        PixelBuffer image = new PixelBuffer(width, height);
 
         // Draw the text on the image
-        DrawTextUtils.drawText(image, 0, 0, text, color, font);
+        image.drawText(text, 0, 0, color.getRGB(), font);
 
         // Draw the image at the right place
-        return drawImage(image, x, y);
+        return drawImage(image.getImage(), x, y);
     }
 }
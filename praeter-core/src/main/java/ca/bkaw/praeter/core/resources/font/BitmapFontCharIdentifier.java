@@ -5,6 +5,9 @@ import org.bukkit.NamespacedKey;
 
 /**
  * A {@link FontCharIdentifier} for single-character bitmap providers.
+ * <p>
+ * The character may be moved into a shared texture by the {@link GlyphAtlasPacker}
+ * when the pack is baked, the identifier still refers to the original texture.
  *
  * @param textureKey The key of the texture to render.
  * @param height The height of the character.
@@ -5,28 +5,52 @@ import ca.bkaw.praeter.core.resources.pack.ResourcePack;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import it.unimi.dsi.fastutil.ints.Int2CharMap;
+import it.unimi.dsi.fastutil.ints.Int2CharOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2CharMap;
+import it.unimi.dsi.fastutil.objects.Object2CharOpenHashMap;
 import org.bukkit.NamespacedKey;
 import org.jetbrains.annotations.Unmodifiable;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A font in a {@link ResourcePack}.
+ * <p>
+ * Use {@link ResourcePack#getFont(NamespacedKey)} to get the font, which shares
+ * one instance per font between all users. The font keeps track of which
+ * characters are used and which font characters already exist, and changes are
+ * written when the pack is {@link ResourcePack#flush() flushed}.
  */
 public class Font {
+    /**
+     * The first character that is used for font characters. Characters from here
+     * are in the private use area.
+     */
+    private static final char FIRST_CHAR = 0xe001;
+
     private final ResourcePack pack;
     private final NamespacedKey key;
     private final JsonResource fontJson;
+    private final BitSet occupiedChars = new BitSet();
+    private final Object2CharMap<BitmapFontCharIdentifier> bitmapChars = new Object2CharOpenHashMap<>();
+    private final Int2CharMap spaceChars = new Int2CharOpenHashMap();
     private SpaceFontProvider spaceProvider;
+    private int nextChar = FIRST_CHAR;
 
     /**
      * Load a font by namespaced key.
      * <p>
      * Will create the font if it does not already exist.
+     * <p>
+     * Prefer {@link ResourcePack#getFont(NamespacedKey)}, fonts created with this
+     * constructor do not know about characters added by other instances.
      *
      * @param pack The pack of the font.
      * @param key The key of the font.
@@ -39,16 +63,66 @@ public class Font {
             .resolve(key.getNamespace())
             .resolve("font")
             .resolve(key.getKey() + ".json");
-        if (Files.exists(path)) {
-            this.fontJson = new JsonResource(this.pack, path);
-        } else {
+        if (Files.notExists(path)) {
             Files.createDirectories(path.getParent());
 
             JsonObject json = new JsonObject();
             json.add("providers", new JsonArray());
 
-            this.fontJson = new JsonResource(this.pack, path, json);
-            this.fontJson.save();
+            new JsonResource(this.pack, path, json).save();
+        }
+        this.fontJson = this.pack.getJsonResource(path);
+
+        for (JsonElement element : this.fontJson.getJson().getAsJsonArray("providers")) {
+            this.index(element.getAsJsonObject());
+        }
+    }
+
+    /**
+     * Record the characters of a provider in the font as occupied, and remember
+     * which font characters the provider adds.
+     *
+     * @param provider The json of the provider.
+     */
+    private void index(JsonObject provider) {
+        switch (provider.get("type").getAsString()) {
+            case "bitmap" -> {
+                JsonArray chars = provider.getAsJsonArray("chars");
+                for (JsonElement element : chars) {
+                    String string = element.getAsString();
+                    for (int i = 0; i < string.length(); i++) {
+                        this.occupiedChars.set(string.charAt(i));
+                    }
+                }
+                // Single characters can be reused for the same font character
+                if (chars.size() == 1 && chars.get(0).getAsString().length() == 1) {
+                    BitmapFontCharIdentifier identifier = new BitmapFontCharIdentifier(
+                        NamespacedKey.fromString(provider.get("file").getAsString()),
+                        provider.has("height") ? provider.get("height").getAsInt() : null,
+                        provider.get("ascent").getAsInt()
+                    );
+                    char c = chars.get(0).getAsString().charAt(0);
+                    if (!this.bitmapChars.containsKey(identifier)) {
+                        this.bitmapChars.put(identifier, c);
+                    }
+                }
+            }
+            case "space" -> {
+                JsonObject advances = provider.getAsJsonObject("advances");
+                for (Map.Entry<String, JsonElement> entry : advances.entrySet()) {
+                    String string = entry.getKey();
+                    for (int i = 0; i < string.length(); i++) {
+                        this.occupiedChars.set(string.charAt(i));
+                    }
+                    if (string.length() == 1 && !this.spaceChars.containsKey(entry.getValue().getAsInt())) {
+                        this.spaceChars.put(entry.getValue().getAsInt(), string.charAt(0));
+                    }
+                }
+                // Continue adding to the first space provider
+                if (this.spaceProvider == null) {
+                    this.spaceProvider = new SpaceFontProvider(advances);
+                }
+            }
         }
     }
 
@@ -79,93 +153,75 @@ public class Font {
     public void addProvider(FontProvider provider) throws IOException {
         JsonObject json = this.fontJson.getJson();
         JsonArray providers = json.getAsJsonArray("providers");
-        providers.add(provider.asJsonObject());
-        this.fontJson.save();
+        JsonObject providerJson = provider.asJsonObject();
+        providers.add(providerJson);
+        this.index(providerJson);
+        this.fontJson.markDirty();
     }
 
     /**
      * Add the bitmap font character identifier by using the next free character.
+     * <p>
+     * Nothing is added if the font character already exists.
      *
      * @param bitmapFontChar The font character to add.
      * @throws IOException If an I/O error occurs.
      */
     public void addFontChar(BitmapFontCharIdentifier bitmapFontChar) throws IOException {
+        if (this.bitmapChars.containsKey(bitmapFontChar)) {
+            // The font character is already present
+            return;
+        }
         BitmapFontProvider provider = new BitmapFontProvider(
             bitmapFontChar.textureKey(),
             bitmapFontChar.height(),
             bitmapFontChar.ascent(),
             this.getNextCharAsList()
         );
-        JsonArray providers = this.fontJson.getJson().getAsJsonArray("providers");
-        for (JsonElement element : providers) {
-            JsonObject json = element.getAsJsonObject();
-            if (provider.isEqual(json)) {
-                // The font character is already present
-                return;
-            }
-        }
         this.addProvider(provider);
+        // The provider always writes the height, remember the identifier as requested
+        this.bitmapChars.put(bitmapFontChar, provider.chars().get(0).charAt(0));
     }
 
     /**
      * Add a new space font character by using the next free character.
+     * <p>
+     * Nothing is added if the font character already exists.
      *
      * @param spaceFontChar The font character to add.
      * @throws IOException If an I/O error occurs.
      */
     public void addFontChar(SpaceFontCharIdentifier spaceFontChar) throws IOException {
         int advance = spaceFontChar.advance();
+        // Only add if it does not already exist
+        if (this.spaceChars.containsKey(advance)) {
+            return;
+        }
         // Use the shared space provider for this font
         if (this.spaceProvider == null) {
-            this.spaceProvider = new SpaceFontProvider();
-            this.addProvider(this.spaceProvider);
-        }
-        // Only add if it does not already exist
-        if (!this.spaceProvider.has(advance)) {
-            char c = this.getNextChar();
-            this.spaceProvider.add(c, advance);
-            this.fontJson.save();
+            this.addProvider(new SpaceFontProvider());
         }
+        char c = this.getNextChar();
+        this.spaceProvider.add(c, advance);
+        this.occupiedChars.set(c);
+        this.spaceChars.put(advance, c);
+        this.fontJson.markDirty();
     }
 
     /**
      * Get the next free character to use.
+     * <p>
+     * The character is not reserved until it has been added to a provider in this
+     * font.
      *
      * @return The character.
      */
     public char getNextChar() {
-        int i = 0xe001;
-        JsonArray providers = this.fontJson.getJson().getAsJsonArray("providers");
-        freeValueLoop:
-        while (true) {
-            char c = (char) i;
-            for (JsonElement element : providers) {
-                JsonObject provider = element.getAsJsonObject();
-                switch (provider.get("type").getAsString()) {
-                    case "bitmap" -> {
-                        JsonArray chars = provider.getAsJsonArray("chars");
-                        for (JsonElement element2 : chars) {
-                            if (element2.getAsString().indexOf(c) >= 0) {
-                                // This character is occupied, lets increment and try again
-                                i++;
-                                continue freeValueLoop;
-                            }
-                        }
-                    }
-                    case "space" -> {
-                        JsonObject advances = provider.getAsJsonObject("advances");
-                        if (advances.has(String.valueOf(c))) {
-                            // This character is occupied, lets increment and try again
-                            i++;
-                            continue freeValueLoop;
-                        }
-                    }
-                }
-            }
-            // This point was reached without hitting a continue statement.
-            // We have an unused character.
-            return c;
+        this.nextChar = this.occupiedChars.nextClearBit(this.nextChar);
+        if (this.nextChar > Character.MAX_VALUE) {
+            throw new IllegalStateException("The font " + this.key + " has no free characters left.");
         }
+        return (char) this.nextChar;
     }
 
     /**
@@ -0,0 +1,55 @@
+package ca.bkaw.praeter.core.resources.font;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interns {@link FontCharIdentifier}s to dense int ids.
+ * <p>
+ * Identifiers are interned when a {@link FontSequence} is created and when a pack
+ * is baked, so that baked font characters can be looked up by id with an array
+ * index instead of hashing the identifier every time a sequence is rendered.
+ * Equal identifiers always get the same id, and ids are never reused.
+ */
+@ApiStatus.Internal
+public final class FontCharIds {
+    private static final Object2IntMap<FontCharIdentifier> IDS = new Object2IntOpenHashMap<>();
+    private static final List<FontCharIdentifier> IDENTIFIERS = new ArrayList<>();
+
+    static {
+        IDS.defaultReturnValue(-1);
+    }
+
+    private FontCharIds() {}
+
+    /**
+     * Get the id of an identifier, assigning the next id if it does not have one.
+     *
+     * @param identifier The identifier.
+     * @return The id.
+     */
+    public static synchronized int intern(FontCharIdentifier identifier) {
+        int id = IDS.getInt(identifier);
+        if (id == -1) {
+            id = IDENTIFIERS.size();
+            IDS.put(identifier, id);
+            IDENTIFIERS.add(identifier);
+        }
+        return id;
+    }
+
+    /**
+     * Get the identifier that has an id.
+     *
+     * @param id The id.
+     * @return The identifier.
+     * @throws IndexOutOfBoundsException If no identifier has the id.
+     */
+    public static synchronized FontCharIdentifier get(int id) {
+        return IDENTIFIERS.get(id);
+    }
+}
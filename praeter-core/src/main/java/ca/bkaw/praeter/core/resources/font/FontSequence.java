@@ -11,10 +11,15 @@ import java.util.List;
 
 /**
  * A sequence of {@link FontCharIdentifier font characters}.
- *
- * @param fontChars The immutable list of font characters.
+ * <p>
+ * The identifiers are {@link FontCharIds interned} when the sequence is created, so
+ * that the baked font characters can be looked up without hashing when the
+ * sequence is rendered.
  */
-public record FontSequence(List<FontCharIdentifier> fontChars) {
+public final class FontSequence {
+    private final List<FontCharIdentifier> fontChars;
+    private final int[] ids;
+
     /**
      * Create a new {@link FontSequence} from a list of font character identifiers
      * that will be copied to an immutable list.
@@ -23,6 +28,19 @@ public record FontSequence(List<FontCharIdentifier> fontChars) {
      */
     public FontSequence(List<FontCharIdentifier> fontChars) {
         this.fontChars = ImmutableList.copyOf(fontChars);
+        this.ids = new int[this.fontChars.size()];
+        for (int i = 0; i < this.ids.length; i++) {
+            this.ids[i] = FontCharIds.intern(this.fontChars.get(i));
+        }
+    }
+
+    /**
+     * Get the font characters in this sequence.
+     *
+     * @return The immutable list of font characters.
+     */
+    public List<FontCharIdentifier> fontChars() {
+        return this.fontChars;
     }
 
     /**
@@ -32,15 +50,30 @@ public record FontSequence(List<FontCharIdentifier> fontChars) {
      * @return The text components.
      */
     public List<Component> getChars(BakedResourcePack pack) {
-        List<Component> components = new ArrayList<>(this.fontChars.size());
-        for (FontCharIdentifier fontCharIdentifier : this.fontChars) {
-            BakedFontChar fontChar = pack.getFontChar(fontCharIdentifier);
+        List<Component> components = new ArrayList<>(this.ids.length);
+        for (int id : this.ids) {
+            BakedFontChar fontChar = pack.getFontChar(id);
             if (fontChar == null) {
                 throw new MissingAssetException("Expected the font char to be baked, but it was " +
-                    "not found. fontCharIdentifier: " + fontCharIdentifier);
+                    "not found. fontCharIdentifier: " + FontCharIds.get(id));
             }
             components.add(fontChar.asComponent());
         }
         return components;
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof FontSequence other && other.fontChars.equals(this.fontChars);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.fontChars.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "FontSequence[fontChars=" + this.fontChars + "]";
+    }
 }
@@ -0,0 +1,291 @@
+package ca.bkaw.praeter.core.resources.font;
+
+import ca.bkaw.praeter.core.Praeter;
+import ca.bkaw.praeter.core.resources.draw.PixelBuffer;
+import ca.bkaw.praeter.core.resources.pack.JsonResource;
+import ca.bkaw.praeter.core.resources.pack.ResourcePack;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Combines the single-character bitmap providers of fonts into shared glyph atlas
+ * textures.
+ * <p>
+ * Every image drawn by a {@link FontSequenceBuilder} gets a bitmap provider with a
+ * single character and a texture of its own, which the client loads one by one.
+ * Characters in the same font with the same height, ascent and texture height are
+ * instead placed in the cells of a grid texture that is used by one provider with
+ * multiple rows of characters.
+ * <p>
+ * The characters are kept, so font characters that were baked before the glyphs
+ * were packed stay valid. The atlases are registered in the
+ * {@link ResourcePack#getIndex() index} of the pack so that the pack can still be
+ * baked afterwards. Generated textures that are no longer used by any provider are
+ * deleted.
+ */
+public class GlyphAtlasPacker {
+    /**
+     * The maximum width and height of an atlas texture. Glyphs that do not fit are
+     * placed in more atlases.
+     */
+    public static final int MAX_ATLAS_SIZE = 2048;
+
+    /**
+     * Pack the glyphs of all fonts in the pack into atlases.
+     *
+     * @param pack The pack.
+     * @return The result.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Result pack(ResourcePack pack) throws IOException {
+        long start = System.nanoTime();
+        pack.flush();
+
+        Set<NamespacedKey> packedTextures = new HashSet<>();
+        Set<NamespacedKey> usedTextures = new HashSet<>();
+        int glyphCount = 0;
+        int atlasCount = 0;
+        for (Path fontPath : listFonts(pack)) {
+            JsonResource font = pack.getJsonResource(fontPath);
+            JsonArray providers = font.getJson().getAsJsonArray("providers");
+            if (providers == null) {
+                continue;
+            }
+
+            // Group the glyphs that can share an atlas, in the order of the providers
+            JsonArray newProviders = new JsonArray();
+            Map<GroupKey, List<Glyph>> groups = new LinkedHashMap<>();
+            for (JsonElement element : providers) {
+                Glyph glyph = readGlyph(pack, element.getAsJsonObject());
+                if (glyph == null) {
+                    newProviders.add(element);
+                } else {
+                    groups.computeIfAbsent(glyph.groupKey(), k -> new ArrayList<>()).add(glyph);
+                }
+            }
+
+            boolean changed = false;
+            for (List<Glyph> group : groups.values()) {
+                if (group.size() < 2) {
+                    group.forEach(glyph -> newProviders.add(glyph.provider()));
+                    continue;
+                }
+                group.sort(Comparator.comparingInt(Glyph::character));
+                int cellWidth = group.stream().mapToInt(glyph -> glyph.image().getWidth()).max().orElseThrow();
+                int cellHeight = group.get(0).image().getHeight();
+                int maxColumns = Math.max(1, MAX_ATLAS_SIZE / cellWidth);
+                int maxRows = Math.max(1, MAX_ATLAS_SIZE / cellHeight);
+                int perAtlas = maxColumns * maxRows;
+                for (int i = 0; i < group.size(); i += perAtlas) {
+                    List<Glyph> glyphs = group.subList(i, Math.min(group.size(), i + perAtlas));
+                    newProviders.add(createAtlas(pack, glyphs, cellWidth, cellHeight, maxColumns, maxRows));
+                    glyphs.forEach(glyph -> packedTextures.add(glyph.identifier().textureKey()));
+                    glyphCount += glyphs.size();
+                    atlasCount++;
+                }
+                changed = true;
+            }
+
+            if (changed) {
+                font.getJson().add("providers", newProviders);
+                font.markDirty();
+            }
+            for (JsonElement element : newProviders) {
+                JsonObject provider = element.getAsJsonObject();
+                if (provider.has("file")) {
+                    usedTextures.add(NamespacedKey.fromString(provider.get("file").getAsString()));
+                }
+            }
+        }
+
+        // Delete generated textures that were only used by the packed providers
+        for (NamespacedKey textureKey : packedTextures) {
+            if (Praeter.GENERATED_NAMESPACE.equals(textureKey.getNamespace()) && !usedTextures.contains(textureKey)) {
+                Files.deleteIfExists(pack.getTexturePath(textureKey));
+            }
+        }
+
+        pack.flush();
+        return new Result(glyphCount, atlasCount, System.nanoTime() - start);
+    }
+
+    private static List<Path> listFonts(ResourcePack pack) throws IOException {
+        List<Path> fonts = new ArrayList<>();
+        Path assetsPath = pack.getPath("assets");
+        if (!Files.isDirectory(assetsPath)) {
+            return fonts;
+        }
+        try (Stream<Path> namespaces = Files.list(assetsPath)) {
+            for (Path fontFolder : namespaces.map(path -> path.resolve("font")).filter(Files::isDirectory).toList()) {
+                try (Stream<Path> files = Files.list(fontFolder)) {
+                    files.filter(path -> path.toString().endsWith(".json")).forEach(fonts::add);
+                }
+            }
+        }
+        // Sorted so that the atlases are the same every time
+        fonts.sort(Comparator.comparing(Path::toString));
+        return fonts;
+    }
+
+    /**
+     * Read the glyph of a provider, if it is a single-character bitmap provider with
+     * a texture in the pack.
+     *
+     * @param pack The pack.
+     * @param provider The json of the provider.
+     * @return The glyph, or null if the provider can not be packed.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Nullable
+    private static Glyph readGlyph(ResourcePack pack, JsonObject provider) throws IOException {
+        if (!"bitmap".equals(provider.get("type").getAsString()) || !provider.has("file")) {
+            return null;
+        }
+        JsonArray chars = provider.getAsJsonArray("chars");
+        if (chars.size() != 1 || chars.get(0).getAsString().length() != 1) {
+            return null;
+        }
+        char character = chars.get(0).getAsString().charAt(0);
+        if (character == 0 || character == ' ') {
+            // These characters are skipped by the client
+            return null;
+        }
+        NamespacedKey textureKey = NamespacedKey.fromString(provider.get("file").getAsString());
+        if (textureKey == null || !pack.hasFile(ResourcePack.getTextureStringPath(textureKey))) {
+            // For example vanilla textures
+            return null;
+        }
+
+        BufferedImage image;
+        try (InputStream stream = Files.newInputStream(pack.getTexturePath(textureKey))) {
+            image = ImageIO.read(stream);
+        }
+        if (image == null) {
+            return null;
+        }
+        Integer height = provider.has("height") ? provider.get("height").getAsInt() : null;
+        int ascent = provider.get("ascent").getAsInt();
+        BitmapFontCharIdentifier identifier = new BitmapFontCharIdentifier(textureKey, height, ascent);
+        return new Glyph(provider, identifier, character, image);
+    }
+
+    /**
+     * Create an atlas texture for the glyphs and the provider that uses it.
+     *
+     * @param pack The pack to write the texture to.
+     * @param glyphs The glyphs, which all have the same {@link GroupKey}.
+     * @param cellWidth The width of each cell.
+     * @param cellHeight The height of each cell.
+     * @param maxColumns The maximum amount of columns.
+     * @param maxRows The maximum amount of rows.
+     * @return The json of the provider.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static JsonObject createAtlas(ResourcePack pack, List<Glyph> glyphs, int cellWidth, int cellHeight,
+                                          int maxColumns, int maxRows) throws IOException {
+        // Make the atlas close to square, unless there would be too many rows
+        int columns = Math.max((int) Math.ceil(Math.sqrt(glyphs.size())), (glyphs.size() + maxRows - 1) / maxRows);
+        columns = Math.min(maxColumns, columns);
+        int rows = (glyphs.size() + columns - 1) / columns;
+
+        PixelBuffer atlas = new PixelBuffer(columns * cellWidth, rows * cellHeight);
+        StringBuilder[] rowChars = new StringBuilder[rows];
+        for (int row = 0; row < rows; row++) {
+            rowChars[row] = new StringBuilder(columns);
+        }
+        Map<Character, BitmapFontCharIdentifier> fontChars = new HashMap<>();
+        for (int i = 0; i < glyphs.size(); i++) {
+            Glyph glyph = glyphs.get(i);
+            int column = i % columns;
+            int row = i / columns;
+            // The cells are transparent, so the pixels are copied exactly. The padding
+            // to the right is transparent and does not change the width of the glyph.
+            atlas.blit(PixelBuffer.read(glyph.image()), column * cellWidth, row * cellHeight);
+            rowChars[row].append(glyph.character());
+            fontChars.put(glyph.character(), glyph.identifier());
+        }
+        // Empty cells are filled with the null character
+        while (rowChars[rows - 1].length() < columns) {
+            rowChars[rows - 1].append('\0');
+        }
+
+        NamespacedKey atlasKey = AbstractFontSequenceBuilder.getGeneratedTextureKey(atlas.getImage());
+        Path path = pack.getTexturePath(atlasKey);
+        Files.createDirectories(path.getParent());
+        try (OutputStream stream = Files.newOutputStream(path)) {
+            ImageIO.write(atlas.getImage(), "png", stream);
+        }
+        // Must be registered before the font is written
+        pack.getIndex().addAtlas(atlasKey, fontChars);
+
+        GroupKey groupKey = glyphs.get(0).groupKey();
+        JsonObject provider = new JsonObject();
+        provider.addProperty("type", "bitmap");
+        provider.addProperty("file", atlasKey.toString());
+        provider.addProperty("ascent", groupKey.ascent());
+        provider.addProperty("height", groupKey.height());
+        JsonArray chars = new JsonArray();
+        for (StringBuilder row : rowChars) {
+            chars.add(row.toString());
+        }
+        provider.add("chars", chars);
+        return provider;
+    }
+
+    /**
+     * A glyph from a single-character bitmap provider.
+     *
+     * @param provider The json of the provider.
+     * @param identifier The identifier of the font character.
+     * @param character The character.
+     * @param image The texture.
+     */
+    private record Glyph(JsonObject provider, BitmapFontCharIdentifier identifier, char character,
+                         BufferedImage image) {
+        private GroupKey groupKey() {
+            int height = this.identifier.height() != null
+                ? this.identifier.height() : BitmapFontProvider.DEFAULT_HEIGHT;
+            return new GroupKey(height, this.identifier.ascent(), this.image.getHeight());
+        }
+    }
+
+    /**
+     * The properties that glyphs must share to be in the same atlas. The height of
+     * the texture must be the same since glyphs are scaled by the height of the
+     * provider divided by the height of a cell.
+     *
+     * @param height The height of the provider.
+     * @param ascent The ascent of the provider.
+     * @param textureHeight The height of the texture.
+     */
+    private record GroupKey(int height, int ascent, int textureHeight) {}
+
+    /**
+     * The result of packing glyphs.
+     *
+     * @param glyphs The amount of glyphs that were packed into atlases.
+     * @param atlases The amount of atlases that were created.
+     * @param nanos The time it took, in nanoseconds.
+     */
+    public record Result(int glyphs, int atlases, long nanos) {}
+}
@@ -11,7 +11,24 @@ import java.util.Map;
  * Note that mutating the provider will mutate the json.
  */
 public class SpaceFontProvider implements FontProvider {
-    private final JsonObject json = new JsonObject();
+    private final JsonObject json;
+
+    /**
+     * Create a new, empty, {@link SpaceFontProvider}.
+     */
+    public SpaceFontProvider() {
+        this(new JsonObject());
+    }
+
+    /**
+     * Create a {@link SpaceFontProvider} that adds to existing advances.
+     *
+     * @param advances The json object of advances, mapping characters to the amount
+     *                 to advance.
+     */
+    public SpaceFontProvider(JsonObject advances) {
+        this.json = advances;
+    }
 
     /**
      * Map the specified character to advance by the set amount.
@@ -7,6 +7,7 @@ import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -22,6 +23,11 @@ public class JsonResource {
 
     /**
      * Read a JsonResource from the pack. The file must exist in the pack.
+     * <p>
+     * If the resource is {@link Pack#getJsonResource(Path) cached} by the pack, the
+     * JSON of the cached resource is used instead of reading the file, so that
+     * changes that have not been flushed yet are included and are kept when this
+     * resource is saved.
      *
      * @param pack The pack.
      * @param path The path to the file.
@@ -32,7 +38,15 @@ public class JsonResource {
         this.pack = pack;
         this.path = path;
 
-        JsonElement jsonElement = JsonParser.parseReader(Files.newBufferedReader(path));
+        JsonObject cachedJson = pack.getCachedJson(path);
+        if (cachedJson != null) {
+            this.json = cachedJson;
+            return;
+        }
+        JsonElement jsonElement;
+        try (Reader reader = Files.newBufferedReader(path)) {
+            jsonElement = JsonParser.parseReader(reader);
+        }
         this.json = jsonElement.getAsJsonObject();
     }
 
@@ -75,7 +89,8 @@ public class JsonResource {
      * <p>
      * Modify this JSON tree to change the contents of this resource.
      * <p>
-     * Call {@link #save()} to write the changes to the pack.
+     * Call {@link #save()} to write the changes to the pack, or {@link #markDirty()}
+     * to write them when the pack is flushed.
      *
      * @return The JSON object.
      */
@@ -83,6 +98,17 @@ public class JsonResource {
         return this.json;
     }
 
+    /**
+     * Mark this resource as modified, so that it is saved when the pack is
+     * {@link Pack#flush() flushed}.
+     * <p>
+     * This avoids writing the file after every change when a resource is modified
+     * many times.
+     */
+    public void markDirty() {
+        this.pack.markDirty(this);
+    }
+
     /**
      * Save the resource to the resource pack, updating the file to contain the JSON
      * in this resource, {@link #getJson()}.
@@ -109,5 +135,6 @@ public class JsonResource {
             Files.createDirectories(parent);
         }
         Files.writeString(this.path, gson.toJson(this.json));
+        this.pack.onSaved(this);
     }
 }
@@ -3,6 +3,9 @@ package ca.bkaw.praeter.core.resources.pack;
 import ca.bkaw.praeter.core.resources.pack.collision.CollisionHandler;
 import ca.bkaw.praeter.core.resources.pack.collision.CollisionHandlerImpl;
 import ca.bkaw.praeter.core.resources.pack.collision.ResourceCollisionException;
+import ca.bkaw.praeter.core.resources.pack.memory.MemoryFileSystem;
+import ca.bkaw.praeter.core.resources.pack.zip.RawZipEntry;
+import ca.bkaw.praeter.core.resources.pack.zip.ZipReader;
 import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
@@ -20,7 +23,14 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * A pack that contains resources, assets and data.
@@ -36,6 +46,12 @@ import java.util.function.Predicate;
  * {@link JsonResource#JsonResource(Pack, Path, JsonObject)} with the
  * {@link JsonObject} as the third parameter. This resource then needs to be
  * saved with {@link JsonResource#save()}.
+ * <p>
+ * JSON resources that are modified many times should instead be gotten using
+ * {@link #getJsonResource(Path)}. The parsed resource is then cached, and changes
+ * are written when the pack is {@link #flush() flushed} after calling
+ * {@link JsonResource#markDirty()}.
+ * Resources that are read while cached share the JSON of the cached resource.
  *
  * @see ResourcePack
  */
@@ -43,6 +59,17 @@ public abstract class Pack {
     private static final Gson GSON = new Gson();
 
     private final Path root;
+    private final Map<Path, JsonResource> jsonResources = new HashMap<>();
+    private final Set<JsonResource> dirtyJsonResources = new LinkedHashSet<>();
+    /**
+     * Whether the pack was opened to only be read, also if the file system does not
+     * enforce it.
+     */
+    boolean readOnly;
+    /**
+     * The files of a read-only pack, relative to the root.
+     */
+    private Set<String> readOnlyFiles;
 
     protected Pack(Path root) {
         this.root = root;
@@ -62,6 +89,36 @@ public abstract class Pack {
         return fileSystem.getPath(".").normalize();
     }
 
+    protected static Path openZipReadOnly(Path zipFile) throws IOException {
+        URI uri = URI.create("jar:" + zipFile.toUri());
+        FileSystem fileSystem = FileSystems.newFileSystem(uri, ImmutableMap.of("accessMode", "readOnly"));
+        return fileSystem.getPath(".").normalize();
+    }
+
+    protected static Path openInMemory() {
+        return MemoryFileSystem.create().getPath("");
+    }
+
+    protected static Path readIntoMemory(Path zipFile, @Nullable Predicate<String> filter) throws IOException {
+        Map<String, RawZipEntry> entries = ZipReader.read(zipFile, filter);
+        MemoryFileSystem fileSystem = MemoryFileSystem.create();
+        Path root = fileSystem.getPath("");
+        try {
+            for (Map.Entry<String, RawZipEntry> entry : entries.entrySet()) {
+                Path path = root.resolve(entry.getKey());
+                Path parent = path.getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                fileSystem.createFile(path, entry.getValue());
+            }
+        } catch (IOException | RuntimeException e) {
+            fileSystem.close();
+            throw e;
+        }
+        return root;
+    }
+
     /**
      * Get the root path of this pack.
      *
@@ -92,6 +149,157 @@ public abstract class Pack {
         return this.root.resolve(path);
     }
 
+    /**
+     * Check whether there is a file at a path within the pack.
+     * <p>
+     * Packs stored in memory and read-only packs answer this from an in-memory
+     * index of their files, without a file system call. The index of a pack stored
+     * in memory is its file system, which is up to date with all writes, and the
+     * files of a read-only pack are indexed the first time this is called. Other
+     * packs check the file system.
+     *
+     * @param path The path within the pack. Leading slashes will be removed.
+     * @return Whether the path is a regular file.
+     * @throws IOException If an I/O error occurs while indexing the pack.
+     */
+    public boolean hasFile(String path) throws IOException {
+        Path filePath = this.getPath(path);
+        FileSystem fileSystem = this.root.getFileSystem();
+        if (fileSystem instanceof MemoryFileSystem memoryFileSystem) {
+            return memoryFileSystem.isFile(filePath);
+        }
+        if (this.readOnly || fileSystem.isReadOnly()) {
+            return this.getReadOnlyFiles().contains(this.getIndexKey(filePath));
+        }
+        return Files.isRegularFile(filePath);
+    }
+
+    private synchronized Set<String> getReadOnlyFiles() throws IOException {
+        if (this.readOnlyFiles == null) {
+            Set<String> files = new HashSet<>();
+            try (Stream<Path> stream = Files.walk(this.root.toAbsolutePath())) {
+                stream.filter(Files::isRegularFile).forEach(file -> files.add(this.getIndexKey(file)));
+            }
+            this.readOnlyFiles = files;
+        }
+        return this.readOnlyFiles;
+    }
+
+    private String getIndexKey(Path path) {
+        return this.root.toAbsolutePath().relativize(path.toAbsolutePath().normalize()).toString();
+    }
+
+    /**
+     * Get a JSON resource from the pack, using a cached instance if the resource has
+     * been gotten before.
+     * <p>
+     * Modifications to the JSON of the returned resource are shared with all other
+     * callers. Call {@link JsonResource#markDirty()} after modifying the resource so
+     * that it is written when the pack is flushed.
+     * <p>
+     * Changes to the file that are not made through a {@link JsonResource} are not
+     * detected while the resource is cached, and will be overwritten if the cached
+     * resource is dirty.
+     *
+     * @param path The path to the file. The file must exist in the pack.
+     * @return The JSON resource.
+     * @throws IOException If an I/O error occurs while reading the file.
+     * @see #flush()
+     */
+    public JsonResource getJsonResource(Path path) throws IOException {
+        Path key = path.normalize();
+        JsonResource resource = this.jsonResources.get(key);
+        if (resource == null) {
+            resource = new JsonResource(this, path);
+            this.jsonResources.put(key, resource);
+        }
+        return resource;
+    }
+
+    /**
+     * Get the JSON of a cached JSON resource.
+     *
+     * @param path The path to the file.
+     * @return The JSON, or null if the resource is not cached.
+     */
+    @Nullable
+    JsonObject getCachedJson(Path path) {
+        JsonResource resource = this.jsonResources.get(path.normalize());
+        return resource == null ? null : resource.getJson();
+    }
+
+    /**
+     * Mark a JSON resource as modified, so that it is saved when the pack is flushed.
+     *
+     * @param resource The resource.
+     */
+    void markDirty(JsonResource resource) {
+        this.dirtyJsonResources.add(resource);
+    }
+
+    /**
+     * Called when a JSON resource in this pack has been saved.
+     *
+     * @param resource The resource that was saved.
+     */
+    void onSaved(JsonResource resource) {
+        this.onJsonSaved(resource.getPath(), resource.getJson());
+        this.dirtyJsonResources.remove(resource);
+        Path key = resource.getPath().normalize();
+        JsonResource cached = this.jsonResources.get(key);
+        if (cached != null && cached != resource) {
+            if (cached.getJson() == resource.getJson()) {
+                // The instances share the JSON, so the cached one was saved too
+                this.dirtyJsonResources.remove(cached);
+            } else {
+                // The file was replaced with other JSON, the cached one is stale
+                this.jsonResources.remove(key);
+                this.dirtyJsonResources.remove(cached);
+            }
+        }
+    }
+
+    /**
+     * Called when a JSON file in this pack has been written using a
+     * {@link JsonResource}.
+     *
+     * @param path The path of the file.
+     * @param json The JSON that was written.
+     */
+    protected void onJsonSaved(Path path, JsonObject json) {}
+
+    /**
+     * Called when a file has been copied into this pack from another pack while
+     * {@link #include(Pack, CollisionHandler, Predicate) including} it.
+     *
+     * @param path The path of the file in this pack.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void onFileIncluded(Path path) throws IOException {}
+
+    /**
+     * Write all pending changes to the files in the pack.
+     * <p>
+     * This saves all JSON resources that have been {@link JsonResource#markDirty()
+     * marked as dirty}. Must be called before the files in the pack are read
+     * directly, for example when baking or writing the pack.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void flush() throws IOException {
+        for (JsonResource resource : List.copyOf(this.dirtyJsonResources)) {
+            resource.save();
+        }
+    }
+
+    /**
+     * Forget all cached state of files in the pack, so that it is read again from
+     * the files. The pack must be flushed before this is called.
+     */
+    protected void clearCaches() {
+        this.jsonResources.clear();
+    }
+
     /**
      * Gets the server's current pack format for this pack type.
      *
@@ -170,6 +378,10 @@ public abstract class Pack {
     public void include(@NotNull Pack other,
                         @NotNull CollisionHandler collisionHandler,
                         @Nullable Predicate<String> filter) throws ResourceCollisionException, IOException {
+        // Files may be replaced or merged, so cached resources can not be kept
+        this.flush();
+        this.clearCaches();
+
         Path thisRoot = this.getRoot();
         Path otherRoot = other.getRoot();
         final ResourceCollisionException[] exception = {null}; // ugly, but we have to
@@ -199,6 +411,7 @@ public abstract class Pack {
                     }
                 } else {
                     Files.copy(otherFile, thisFile);
+                    Pack.this.onFileIncluded(thisFile);
                 }
                 return FileVisitResult.CONTINUE;
             }
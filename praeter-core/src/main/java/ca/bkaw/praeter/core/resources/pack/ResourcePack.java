@@ -2,16 +2,37 @@ package ca.bkaw.praeter.core.resources.pack;
 
 import ca.bkaw.praeter.core.Praeter;
 import ca.bkaw.praeter.core.resources.CustomModelDataStore;
+import ca.bkaw.praeter.core.resources.TextureCache;
+import ca.bkaw.praeter.core.resources.bake.PackIndex;
+import ca.bkaw.praeter.core.resources.font.Font;
+import ca.bkaw.praeter.core.resources.pack.memory.MemoryFileSystem;
+import com.google.common.collect.Multimap;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.bukkit.NamespacedKey;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 /**
  * A {@link Pack} that contains assets for the client like models and textures.
@@ -21,8 +42,36 @@ public class ResourcePack extends Pack {
     public static final String OVERRIDES = "overrides";
     public static final String PREDICATE = "predicate";
 
+    private final Set<JsonResource> unsortedModels = new LinkedHashSet<>();
+    private final Map<JsonResource, OverrideIndex> overrideIndexes = new WeakHashMap<>();
+    private final Map<NamespacedKey, Font> fonts = new HashMap<>();
+    private PackIndex index;
+    /**
+     * The indexed files that have been changed in a pack stored in memory since
+     * they were last indexed, relative to the root.
+     */
+    private final Set<String> changedFiles = ConcurrentHashMap.newKeySet();
+    private volatile TextureCache textureCache;
+
     protected ResourcePack(Path root) {
+        this(root, null);
+    }
+
+    private ResourcePack(Path root, @Nullable PackIndex index) {
         super(root);
+        this.index = index;
+        if (root.getFileSystem() instanceof MemoryFileSystem fileSystem) {
+            // Also index files that are written without going through this pack
+            fileSystem.setFileListener(path -> {
+                if (PackIndex.isIndexed(path)) {
+                    this.changedFiles.add(path);
+                }
+                TextureCache textureCache = this.textureCache;
+                if (textureCache != null && path.endsWith(".png")) {
+                    textureCache.invalidate(this.getPath(path));
+                }
+            });
+        }
     }
 
     /**
@@ -57,6 +106,81 @@ public class ResourcePack extends Pack {
         return new ResourcePack(openZip(zipFile));
     }
 
+    /**
+     * Open an existing zip file as a read-only resource pack, using the root of the
+     * zip as the root of the resource pack.
+     * <p>
+     * Only the central directory of the zip is read when the pack is opened, and
+     * files are read from the zip when they are used, so this is cheap also for
+     * large zip files of which only a few files are used.
+     * <p>
+     * The pack must not be modified. Not all Java versions prevent writes to the
+     * zip file system.
+     *
+     * @param zipFile The path of the zip file to read.
+     * @return The loaded resource pack.
+     * @throws IOException If an I/O error occurs, or if the zip file does not exist.
+     */
+    public static ResourcePack loadZipReadOnly(Path zipFile) throws IOException {
+        ResourcePack pack = new ResourcePack(openZipReadOnly(zipFile));
+        pack.readOnly = true;
+        return pack;
+    }
+
+    /**
+     * Create an empty resource pack that is stored in memory.
+     * <p>
+     * Nothing is written to the disk while the pack is being built. The pack must be
+     * written to a file to be kept, its contents are lost when the file system of the
+     * root is closed.
+     *
+     * @return The created resource pack.
+     * @see ca.bkaw.praeter.core.resources.pack.output.PackZipWriter
+     */
+    public static ResourcePack createInMemory() {
+        // The pack is empty, so the index does not have to be created by scanning
+        return new ResourcePack(openInMemory(), new PackIndex());
+    }
+
+    /**
+     * Create a copy of this resource pack that is stored in memory.
+     * <p>
+     * This pack must be stored in memory. The pack is {@link #flush() flushed}, and
+     * the copy then shares the contents of all files with this pack without copying
+     * them. Files are only copied when they are written to in one of the packs, so
+     * the packs can be changed separately afterwards.
+     *
+     * @return The copy.
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalStateException If this pack is not stored in memory.
+     */
+    public ResourcePack copyInMemory() throws IOException {
+        if (!(this.getRoot().getFileSystem() instanceof MemoryFileSystem fileSystem)) {
+            throw new IllegalStateException("Only packs that are stored in memory can be copied.");
+        }
+        this.flush();
+        PackIndex index = this.getIndex();
+        return new ResourcePack(fileSystem.copy().getPath(""), index.copy());
+    }
+
+    /**
+     * Read the files of a zip file into a new resource pack that is stored in memory.
+     * <p>
+     * The files are kept compressed as they are stored in the zip file and are only
+     * decompressed when read. Files that are not modified are written as is when the
+     * pack is written using {@link ca.bkaw.praeter.core.resources.pack.output.PackZipWriter},
+     * also after being included into another pack in memory. Entries that do not pass
+     * the filter are never read.
+     *
+     * @param zipFile The path of the zip file to read.
+     * @param filter Determines which files should be read, or null to read all files.
+     * @return The resource pack.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static ResourcePack readZipIntoMemory(Path zipFile, @Nullable Predicate<String> filter) throws IOException {
+        return new ResourcePack(readIntoMemory(zipFile, filter));
+    }
+
     @Override
     protected int getCurrentPackFormat() {
         return 12;
@@ -140,6 +264,69 @@ public class ResourcePack extends Pack {
         Files.copy(vanillaPath, path);
     }
 
+    /**
+     * Get a font in this pack, creating it if it does not exist.
+     * <p>
+     * The same instance is returned for all calls with the same key, so that all
+     * users of the font share which characters are used.
+     *
+     * @param key The key of the font.
+     * @return The font.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Font getFont(NamespacedKey key) throws IOException {
+        Font font = this.fonts.get(key);
+        if (font == null) {
+            font = new Font(this, key);
+            this.fonts.put(key, font);
+        }
+        return font;
+    }
+
+    /**
+     * Get the cached JSON resource of a model that overrides will be added to,
+     * copying the model from the vanilla assets if it does not exist in this pack.
+     *
+     * @param vanillaModel The model.
+     * @return The JSON resource.
+     * @throws IOException If an I/O error occurs.
+     */
+    private JsonResource getOverriddenModel(NamespacedKey vanillaModel) throws IOException {
+        Path path = this.getModelPath(vanillaModel);
+        if (!Files.exists(path)) {
+            this.copyModelFromVanilla(path, vanillaModel);
+        }
+        return this.getJsonResource(path);
+    }
+
+    private static JsonArray getOverrides(JsonResource resource) {
+        JsonObject json = resource.getJson();
+        if (json.has(OVERRIDES)) {
+            return json.getAsJsonArray(OVERRIDES);
+        }
+        JsonArray overrides = new JsonArray();
+        json.add(OVERRIDES, overrides);
+        return overrides;
+    }
+
+    /**
+     * Get the index of custom model data overrides of a model, creating it if the
+     * model has not been indexed yet or if the overrides were changed without
+     * updating the index.
+     *
+     * @param resource The JSON resource of the model.
+     * @param overrides The overrides of the model.
+     * @return The index.
+     */
+    private OverrideIndex getOverrideIndex(JsonResource resource, JsonArray overrides) {
+        OverrideIndex index = this.overrideIndexes.get(resource);
+        if (index == null || !index.isValidFor(overrides)) {
+            index = new OverrideIndex(overrides);
+            this.overrideIndexes.put(resource, index);
+        }
+        return index;
+    }
+
     /**
      * Add a custom model data entry to the vanilla model, redirecting the model
      * to {@code model}.
@@ -149,6 +336,9 @@ public class ResourcePack extends Pack {
      * <p>
      * See {@link #getModelPath(NamespacedKey)}, "item", "block", etc. folders must
      * be included in the model namespaced key's path.
+     * <p>
+     * The model is modified in the cached {@link JsonResource} and written when
+     * the pack is {@link #flush() flushed}.
      *
      * @param vanillaModel The model to add custom model data to.
      * @param model The model to redirect to.
@@ -159,80 +349,225 @@ public class ResourcePack extends Pack {
      * @see #getModelPath(NamespacedKey)
      */
     public int addCustomModelData(NamespacedKey vanillaModel, NamespacedKey model) throws IOException {
-        Path path = this.getModelPath(vanillaModel);
-        if (!Files.exists(path)) {
-            this.copyModelFromVanilla(path, vanillaModel);
-        }
-        JsonResource jsonResource = new JsonResource(this, path);
-        JsonArray overrides;
-        if (jsonResource.getJson().has(OVERRIDES)) {
-            overrides = jsonResource.getJson().get(OVERRIDES).getAsJsonArray();
-        } else {
-            overrides = new JsonArray();
-            jsonResource.getJson().add(OVERRIDES, overrides);
-        }
-        String modelKey = model.toString();
+        return this.addCustomModelData(vanillaModel, List.of(model)).getInt(model);
+    }
+
+    /**
+     * Add custom model data entries to the vanilla model, redirecting the model to
+     * each of the {@code models}.
+     * <p>
+     * This is the same as calling {@link #addCustomModelData(NamespacedKey, NamespacedKey)}
+     * for each model, but the vanilla model and its overrides are only looked up
+     * once, which matters when adding a large amount of models.
+     *
+     * @param vanillaModel The model to add custom model data to.
+     * @param models The models to redirect to.
+     * @return A map from each model to the custom model data value that needs to be
+     * set on the item to redirect to it.
+     * @throws IOException If something goes wrong
+     * @throws IllegalArgumentException If the {@code vanillaModel} doesn't exist in this pack,
+     * and wasn't found in the vanilla assets either.
+     * @see #addCustomModelData(NamespacedKey, NamespacedKey)
+     */
+    public Object2IntMap<NamespacedKey> addCustomModelData(NamespacedKey vanillaModel,
+                                                           Collection<NamespacedKey> models) throws IOException {
+        JsonResource jsonResource = this.getOverriddenModel(vanillaModel);
+        JsonArray overrides = getOverrides(jsonResource);
+        OverrideIndex index = this.getOverrideIndex(jsonResource, overrides);
 
         CustomModelDataStore store
             = Praeter.get().getResourceManager().getPacks().getCustomModelDataStore();
 
-        // Look for an existing custom model data for this model
-        for (JsonElement existingOverrideElement : overrides) {
-            JsonObject existingOverride = existingOverrideElement.getAsJsonObject();
-            JsonObject predicate = existingOverride.get(PREDICATE).getAsJsonObject();
-            if (!predicate.has(CUSTOM_MODEL_DATA)) continue;
+        Object2IntMap<NamespacedKey> values = new Object2IntOpenHashMap<>(models.size());
+        boolean changed = false;
+        for (NamespacedKey model : models) {
+            if (values.containsKey(model)) {
+                continue;
+            }
+            String modelKey = model.toString();
 
-            String existingModel = existingOverride.get("model").getAsString();
-            if (predicate.size() == 1 && modelKey.equals(existingModel)) {
+            // Look for an existing custom model data for this model
+            if (index.models.containsKey(modelKey)) {
                 // The model we were trying to add already existed and has no other predicates.
-                int customModelData = predicate.get(CUSTOM_MODEL_DATA).getAsInt();
+                int customModelData = index.models.getInt(modelKey);
                 // Let's ensure the store is aware of this value
-                store.set(model, customModelData);
-                return customModelData;
+                store.set(vanillaModel, model, customModelData);
+                values.put(model, customModelData);
+                continue;
             }
-        }
 
-        int value = store.has(model) ? store.get(model) : store.next();
-
-        // Ensure this value isn't used, it really shouldn't be, but in case plugins
-        // add their own custom model data manually or something. We really don't
-        // want duplicates.
-        findFreeValue:
-        while (true) {
-            for (JsonElement existingOverrideElement : overrides) {
-                JsonObject existingOverride = existingOverrideElement.getAsJsonObject();
-                JsonObject predicate = existingOverride.get(PREDICATE).getAsJsonObject();
-                if (!predicate.has(CUSTOM_MODEL_DATA)) {
-                    continue;
-                }
-                int existingValue = predicate.get(CUSTOM_MODEL_DATA).getAsInt();
-                if (existingValue == value) {
-                    Praeter.get().getLogger().warning("Occupied custom model data value " + value
-                        + " existed for " + existingOverride.get("model").getAsString()
-                        + " while trying to add " + model);
-                    // This custom model data value is occupied, increment it and look again
-                    value = store.next();
-                    continue findFreeValue;
-                }
+            // Values are allocated per vanilla model and stored so that they stay
+            // consistent past restarts and between resource packs.
+            int value = store.allocate(vanillaModel, model);
+
+            // Ensure this value isn't used, it really shouldn't be, but in case plugins
+            // add their own custom model data manually or something. We really don't
+            // want duplicates.
+            while (index.values.containsKey(value)) {
+                Praeter.get().getLogger().warning("Occupied custom model data value " + value
+                    + " existed for " + index.values.get(value)
+                    + " while trying to add " + model);
+                // This custom model data value is occupied, allocate another one
+                value = store.reallocate(vanillaModel, model);
             }
-            // We finished the loop without hitting the continue statement, we have found
-            // a custom model data value that isn't used.
-            break;
+
+            JsonObject override = new JsonObject();
+            JsonObject predicate = new JsonObject();
+            override.add(PREDICATE, predicate);
+            predicate.addProperty(CUSTOM_MODEL_DATA, value);
+            override.addProperty("model", modelKey);
+            overrides.add(override);
+            index.add(override);
+            values.put(model, value);
+            changed = true;
         }
 
-        // Store the custom model data value used so that it stays consistent past
-        // restarts and between resource packs.
-        store.set(model, value);
+        if (changed) {
+            // Overrides are sorted once when the pack is flushed
+            this.unsortedModels.add(jsonResource);
+            jsonResource.markDirty();
+        }
+        return values;
+    }
+
+    /**
+     * Add custom model data entries to many vanilla models at once.
+     * <p>
+     * The models are grouped by vanilla model, and each vanilla model is handled
+     * like {@link #addCustomModelData(NamespacedKey, Collection)}, so each model
+     * file is only looked up, sorted and written once.
+     *
+     * @param models A multimap from vanilla models to the models to redirect to.
+     * @return A map from each vanilla model to a map from the models to the custom
+     * model data values that need to be set on the item to redirect to them.
+     * @throws IOException If something goes wrong
+     * @throws IllegalArgumentException If one of the vanilla models doesn't exist
+     * in this pack, and wasn't found in the vanilla assets either.
+     * @see #addCustomModelData(NamespacedKey, NamespacedKey)
+     */
+    public Map<NamespacedKey, Object2IntMap<NamespacedKey>> addCustomModelData(
+        Multimap<NamespacedKey, NamespacedKey> models) throws IOException {
+        Map<NamespacedKey, Object2IntMap<NamespacedKey>> values = new LinkedHashMap<>();
+        for (Map.Entry<NamespacedKey, Collection<NamespacedKey>> entry : models.asMap().entrySet()) {
+            values.put(entry.getKey(), this.addCustomModelData(entry.getKey(), entry.getValue()));
+        }
+        return values;
+    }
+
+    /**
+     * Add an override to the vanilla model, redirecting the model to {@code model}
+     * when the predicate is met.
+     * <p>
+     * The model is modified in the cached {@link JsonResource} and written when
+     * the pack is {@link #flush() flushed}.
+     *
+     * @param vanillaModel The model to add the override to.
+     * @param model The model to redirect to when the predicate is met.
+     * @param predicate The predicate to add with the override.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void addOverride(NamespacedKey vanillaModel, NamespacedKey model, JsonObject predicate) throws IOException {
+        JsonResource resource = this.getOverriddenModel(vanillaModel);
+        JsonArray overrides = getOverrides(resource);
+        OverrideIndex index = this.getOverrideIndex(resource, overrides);
 
         JsonObject override = new JsonObject();
-        JsonObject predicate = new JsonObject();
         override.add(PREDICATE, predicate);
-        predicate.addProperty(CUSTOM_MODEL_DATA, value);
-        override.addProperty("model", modelKey);
+        override.addProperty("model", model.toString());
         overrides.add(override);
+        index.add(override);
+
+        resource.markDirty();
+    }
 
+    @Override
+    public void flush() throws IOException {
         // Overrides need to be sorted by the custom model data value, otherwise the
         // value that is last in the list will take priority in a way.
+        for (JsonResource resource : this.unsortedModels) {
+            sortOverrides(resource);
+        }
+        this.unsortedModels.clear();
+        super.flush();
+    }
+
+    /**
+     * Get the index of item models and font characters in this pack.
+     * <p>
+     * The index is created by scanning the pack the first time it is needed, unless
+     * the pack was created empty, and is then updated as item models and fonts are
+     * written through {@link JsonResource}s or included from other packs. The pack
+     * is {@link #flush() flushed} first.
+     * <p>
+     * For packs stored in memory, item models and fonts that were written, copied or
+     * deleted in other ways, for example using {@link Files} or by a
+     * {@link ca.bkaw.praeter.core.resources.pack.collision.CollisionHandler}, are
+     * indexed again when this method is called. Such changes are not detected for
+     * other packs.
+     *
+     * @return The index.
+     * @throws IOException If an I/O error occurs while scanning the pack.
+     */
+    @ApiStatus.Internal
+    public PackIndex getIndex() throws IOException {
+        this.flush();
+        if (this.index == null) {
+            this.changedFiles.clear();
+            this.index = PackIndex.scan(this);
+            return this.index;
+        }
+        for (Iterator<String> iterator = this.changedFiles.iterator(); iterator.hasNext(); ) {
+            String path = iterator.next();
+            iterator.remove();
+            this.index.indexFile(this, this.getPath(path));
+        }
+        return this.index;
+    }
+
+    @Override
+    protected void onJsonSaved(Path path, JsonObject json) {
+        if (this.index != null) {
+            this.index.indexFile(this, path, json);
+            // Already indexed, with the JSON that was written
+            this.changedFiles.remove(PackIndex.relativize(this, path));
+        }
+    }
+
+    @Override
+    protected void onFileIncluded(Path path) throws IOException {
+        if (this.index != null) {
+            this.index.indexFile(this, path);
+            this.changedFiles.remove(PackIndex.relativize(this, path));
+        }
+    }
+
+    /**
+     * Set the cache of decoded textures that textures in this pack may be cached in.
+     * <p>
+     * Textures that are written to in this pack, if it is stored in memory, are
+     * removed from the cache, and the cache is cleared when another pack is
+     * {@link #include(Pack) included} into this pack.
+     *
+     * @param textureCache The texture cache, or null.
+     */
+    @ApiStatus.Internal
+    public void setTextureCache(@Nullable TextureCache textureCache) {
+        this.textureCache = textureCache;
+    }
+
+    @Override
+    protected void clearCaches() {
+        super.clearCaches();
+        TextureCache textureCache = this.textureCache;
+        if (textureCache != null) {
+            textureCache.clear();
+        }
+        this.fonts.clear();
+        this.overrideIndexes.clear();
+    }
+
+    private static void sortOverrides(JsonResource resource) {
+        JsonArray overrides = getOverrides(resource);
         List<JsonObject> overridesArrayList = new ArrayList<>(overrides.size());
         for (JsonElement jsonElement : overrides) {
             overridesArrayList.add(jsonElement.getAsJsonObject());
@@ -249,44 +584,61 @@ public class ResourcePack extends Pack {
             }
             return 0;
         });
-        overrides = new JsonArray(overridesArrayList.size());
+        JsonArray sorted = new JsonArray(overridesArrayList.size());
         for (JsonObject jsonObject : overridesArrayList) {
-            overrides.add(jsonObject);
+            sorted.add(jsonObject);
         }
-        jsonResource.getJson().add(OVERRIDES, overrides);
-
-        jsonResource.save();
-        return value;
+        resource.getJson().add(OVERRIDES, sorted);
     }
 
     /**
-     * Add an override to the vanilla model, redirecting the model to {@code model}
-     * when the predicate is met.
-     *
-     * @param vanillaModel The model to add the override to.
-     * @param model The model to redirect to when the predicate is met.
-     * @param predicate The predicate to add with the override.
-     * @throws IOException If an I/O error occurs.
+     * An index of the custom model data overrides of a model, to avoid scanning all
+     * overrides every time one is added.
      */
-    public void addOverride(NamespacedKey vanillaModel, NamespacedKey model, JsonObject predicate) throws IOException {
-        Path vanillaModelPath = this.getModelPath(vanillaModel);
-        if (!Files.exists(vanillaModelPath)) {
-            this.copyModelFromVanilla(vanillaModelPath, vanillaModel);
-        }
-        JsonResource resource = new JsonResource(this, vanillaModelPath);
-        JsonArray overrides;
-        if (resource.getJson().has(OVERRIDES)) {
-            overrides = resource.getJson().getAsJsonArray(OVERRIDES);
-        } else {
-            overrides = new JsonArray();
-            resource.getJson().add(OVERRIDES, overrides);
+    private static final class OverrideIndex {
+        /**
+         * The custom model data value of models that are redirected to with no other
+         * predicates than custom model data.
+         */
+        private final Object2IntMap<String> models = new Object2IntOpenHashMap<>();
+        /**
+         * The model that each used custom model data value redirects to.
+         */
+        private final Int2ObjectMap<String> values = new Int2ObjectOpenHashMap<>();
+        private JsonArray overrides;
+        private int size;
+
+        private OverrideIndex(JsonArray overrides) {
+            for (JsonElement element : overrides) {
+                this.add(element.getAsJsonObject());
+            }
+            this.overrides = overrides;
+            this.size = overrides.size();
         }
 
-        JsonObject override = new JsonObject();
-        override.add(PREDICATE, predicate);
-        override.addProperty("model", model.toString());
-        overrides.add(override);
+        /**
+         * Check whether the index contains all overrides in the array, or whether the
+         * overrides have been changed without updating this index.
+         *
+         * @param overrides The overrides.
+         * @return Whether the index is valid.
+         */
+        private boolean isValidFor(JsonArray overrides) {
+            return this.overrides == overrides && this.size == overrides.size();
+        }
 
-        resource.save();
+        private void add(JsonObject override) {
+            this.size++;
+            JsonObject predicate = override.getAsJsonObject(PREDICATE);
+            if (predicate == null || !predicate.has(CUSTOM_MODEL_DATA)) {
+                return;
+            }
+            int value = predicate.get(CUSTOM_MODEL_DATA).getAsInt();
+            String model = override.get("model").getAsString();
+            this.values.putIfAbsent(value, model);
+            if (predicate.size() == 1) {
+                this.models.putIfAbsent(model, value);
+            }
+        }
     }
 }
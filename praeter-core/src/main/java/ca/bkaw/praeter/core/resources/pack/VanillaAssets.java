@@ -1,7 +1,7 @@
 package ca.bkaw.praeter.core.resources.pack;
 
 import ca.bkaw.praeter.core.Praeter;
-import com.google.common.collect.ImmutableMap;
+import ca.bkaw.praeter.core.config.PraeterConfig.ResourcePacksConfig.VanillaAssetsConfig;
 import com.google.common.io.BaseEncoding;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -12,57 +12,115 @@ import org.bukkit.Bukkit;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URI;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.logging.Logger;
 
 /**
- * Utility for extracting the {@link ResourcePack Resource Pack} containing all
+ * Utility for getting the {@link ResourcePack Resource Pack} containing all
  * vanilla assets.
+ * <p>
+ * The assets are read straight from the client jar, which is downloaded once and
+ * kept. Opening the jar only reads its central directory, and only the assets that
+ * are used are read from it.
  */
 public final class VanillaAssets {
-    private static final String VERSION_MANIFEST_URL = "https://piston-meta.mojang.com/mc/game/version_manifest_v2.json";
+    public static final String VERSION_MANIFEST_URL = "https://piston-meta.mojang.com/mc/game/version_manifest_v2.json";
+    private static final int CONNECT_TIMEOUT = 10_000;
+    private static final int READ_TIMEOUT = 30_000;
+    /**
+     * The amount of times a download is attempted before giving up. Each attempt
+     * continues where the previous one stopped, if the server supports it.
+     */
+    private static final int DOWNLOAD_ATTEMPTS = 5;
 
     /**
-     * Read the vanilla assets, and extract them if they did not exist.
+     * Read the vanilla assets, and download the client jar if it did not exist or
+     * is for another version.
+     * <p>
+     * A client jar placed at the configured {@link VanillaAssetsConfig#clientJar() path},
+     * at the path of the downloaded jar, or in the configured
+     * {@link VanillaAssetsConfig#mirrorDirectory() mirror directory} is used as is
+     * if it is for the current version, so that nothing has to be downloaded.
      *
-     * @param path The path to place the vanilla assets.
-     * @return The resource pack containing the vanilla assets.
+     * @param path The path of the downloaded client jar.
+     * @param config The vanilla assets config.
+     * @return The read-only resource pack containing the vanilla assets.
      * @throws IOException If an I/O error occurs.
      */
-    public static ResourcePack readOrExtract(Path path) throws IOException {
-        ResourcePack vanillaAssets = ResourcePack.loadZip(path);
-        if (!vanillaAssetsExists(vanillaAssets)) {
-            Praeter.get().getLogger().info("Extracting vanilla assets");
-            // The vanilla assets didn't exist or were not up-to-date.
-            vanillaAssets.getRoot().getFileSystem().close();
-            Files.deleteIfExists(path);
+    public static ResourcePack readOrDownload(Path path, VanillaAssetsConfig config) throws IOException {
+        List<Path> candidates = new ArrayList<>(3);
+        if (config.clientJar() != null) {
+            candidates.add(config.clientJar());
+        }
+        candidates.add(path);
+        if (config.mirrorDirectory() != null) {
+            candidates.add(config.mirrorDirectory().resolve(Bukkit.getMinecraftVersion() + ".jar"));
+        }
+        for (Path candidate : candidates) {
+            ResourcePack vanillaAssets = readIfCurrent(candidate);
+            if (vanillaAssets != null) {
+                return vanillaAssets;
+            }
+        }
+        Praeter.get().getLogger().info("Downloading vanilla assets");
+        // No client jar for the current version exists.
+        VanillaAssets.downloadClientJar(path, config.versionManifestUrl());
+        return ResourcePack.loadZipReadOnly(path);
+    }
 
-            // Extract
-            VanillaAssets.extract(path);
-            // Load again
-            vanillaAssets = ResourcePack.loadZip(path);
+    /**
+     * Open a client jar if it exists and is for the current version.
+     *
+     * @param path The path of the client jar.
+     * @return The vanilla assets, or null.
+     */
+    private static ResourcePack readIfCurrent(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        ResourcePack vanillaAssets = null;
+        try {
+            vanillaAssets = ResourcePack.loadZipReadOnly(path);
+            if (isCurrentVersion(vanillaAssets)) {
+                return vanillaAssets;
+            }
+            Praeter.get().getLogger().info("Ignoring the client jar at " + path
+                + " as it is not for " + Bukkit.getMinecraftVersion());
+        } catch (IOException | RuntimeException e) {
+            // Treat a client jar that can not be read as missing
+            Praeter.get().getLogger().warning("Failed to read the client jar at " + path + ". " + e);
+        }
+        if (vanillaAssets != null) {
+            try {
+                vanillaAssets.getRoot().getFileSystem().close();
+            } catch (IOException ignored) {}
         }
-        return vanillaAssets;
+        return null;
     }
 
-    private static boolean vanillaAssetsExists(ResourcePack vanillaAssets) throws IOException {
-        // If the pack does not exist, opening it will create it. But in that case,
-        // the version.json file will not exist.
+    private static boolean isCurrentVersion(ResourcePack vanillaAssets) throws IOException {
         Path path = vanillaAssets.getPath("version.json");
         if (Files.exists(path)) {
             // The file exists, but let's make sure it's up-to-date.
-            JsonElement json = JsonParser.parseReader(Files.newBufferedReader(path));
+            JsonElement json;
+            try (Reader reader = Files.newBufferedReader(path)) {
+                json = JsonParser.parseReader(reader);
+            }
             String version = json.getAsJsonObject().get("name").getAsString();
             // If the version matches, the vanilla assets are up-to-date
             return version.equals(Bukkit.getMinecraftVersion());
@@ -71,19 +129,30 @@ public final class VanillaAssets {
     }
 
     /**
-     * Extract the vanilla assets.
+     * Download the client jar of the current version.
+     * <p>
+     * The jar is streamed to a partial file next to the path, and then moved to the
+     * path, replacing the previous jar if there was one. If the download is
+     * interrupted, the next download continues from where it stopped if the server
+     * supports range requests.
      *
-     * @param path The path to extract to.
+     * @param path The path to download to.
+     * @param versionManifestUrl The url of the version manifest, which may be a
+     *                           {@code file:} url.
      * @throws IOException If an I/O error occurs.
      */
-    public static void extract(Path path) throws IOException {
+    public static void downloadClientJar(Path path, String versionManifestUrl) throws IOException {
         Files.createDirectories(path.getParent());
 
         Logger logger = Praeter.get().getLogger();
         logger.info("    Downloading version manifest, version info and client jar");
 
         // Download the version manifest
-        JsonElement versionManifest = JsonParser.parseReader(getVersionManifest());
+        JsonElement versionManifest;
+        try (Reader reader = new InputStreamReader(open(new URL(versionManifestUrl), 0).getInputStream(),
+            StandardCharsets.UTF_8)) {
+            versionManifest = JsonParser.parseReader(reader);
+        }
 
         // Find the current version in the version manifest
         String version = Bukkit.getMinecraftVersion();
@@ -109,61 +178,61 @@ public final class VanillaAssets {
 
         // Get the url to the client jar and download it
         JsonObject clientDownload = versionInfo.getAsJsonObject().get("downloads").getAsJsonObject().get("client").getAsJsonObject();
-        Path downloadPath = Files.createTempFile("client", ".jar");
-        download(clientDownload.get("url").getAsString(), clientDownload.get("sha1").getAsString(), downloadPath);
-
-        logger.info("    Extracting vanilla assets from client jar");
-
-        FileSystem clientFileSystem = FileSystems.newFileSystem(URI.create("jar:" + downloadPath.toUri()), ImmutableMap.of());
-
-        ResourcePack resourcePack = ResourcePack.loadZip(path);
-        // Copy pack.png
-        Files.copy(clientFileSystem.getPath("pack.png"), resourcePack.getPath("pack.png"));
-        // Copy version.json to validate the version
-        Files.copy(clientFileSystem.getPath("version.json"), resourcePack.getPath("version.json"));
-
-        // Copy assets folder
-        Path from = clientFileSystem.getPath("assets");
-        Path to = resourcePack.getPath("assets");
-        Files.walkFileTree(from, new SimpleFileVisitor<>() {
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                Files.createDirectories(to.resolve(from.relativize(dir)));
-                return FileVisitResult.CONTINUE;
-            }
+        String clientSha1 = clientDownload.get("sha1").getAsString().toLowerCase(Locale.ROOT);
 
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                Files.copy(file, to.resolve(from.relativize(file)));
-                return FileVisitResult.CONTINUE;
-            }
-        });
+        // The partial file is named after the hash so that a partial download of
+        // another version is never continued.
+        Path downloadPath = path.resolveSibling(path.getFileName() + "." + clientSha1 + ".part");
+        deleteOtherPartialDownloads(path, downloadPath);
+        download(clientDownload.get("url").getAsString(), clientSha1, downloadPath);
+        Files.move(downloadPath, path, StandardCopyOption.REPLACE_EXISTING);
 
-        logger.info("    Cleaning up");
-        clientFileSystem.close();
-        Files.delete(downloadPath);
+        logger.info("    Done");
+    }
 
-        // Close the resource pack to save the file
-        resourcePack.getRoot().getFileSystem().close();
+    private static void deleteOtherPartialDownloads(Path path, Path downloadPath) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path.getParent(),
+            path.getFileName() + ".*.part")) {
+            for (Path partPath : stream) {
+                if (!partPath.equals(downloadPath)) {
+                    Files.deleteIfExists(partPath);
+                }
+            }
+        }
+    }
 
-        logger.info("    Done");
+    private static MessageDigest createSha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Should never happen as all Java platforms are required to implement SHA-1
+            throw new RuntimeException(e);
+        }
     }
 
-    private static InputStreamReader getVersionManifest() throws IOException {
-        InputStream in = new URL(VERSION_MANIFEST_URL).openStream();
-        return new InputStreamReader(in);
+    /**
+     * Open a connection to the url, requesting the content from an offset.
+     *
+     * @param url The url.
+     * @param offset The offset to request the content from, or 0 for all content.
+     * @return The connection, which has been connected.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static URLConnection open(URL url, long offset) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        if (offset > 0) {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+        connection.connect();
+        return connection;
     }
 
     private static String get(String url, String sha1) throws IOException {
-        try (InputStream in = new URL(url).openStream()) {
+        try (InputStream in = open(new URL(url), 0).getInputStream()) {
             byte[] bytes = in.readAllBytes();
-            MessageDigest messageDigest;
-            try {
-                messageDigest = MessageDigest.getInstance("SHA-1");
-            } catch (NoSuchAlgorithmException e) {
-                // Should never happen as all Java platforms are required to implement SHA-1
-                throw new RuntimeException(e);
-            }
+            MessageDigest messageDigest = createSha1Digest();
             byte[] gotBytes = messageDigest.digest(bytes);
             String gotSha1 = BaseEncoding.base16().encode(gotBytes);
             if (!sha1.equalsIgnoreCase(gotSha1)) {
@@ -173,23 +242,108 @@ public final class VanillaAssets {
         }
     }
 
-
+    /**
+     * Download a file to a path while computing its hash.
+     * <p>
+     * If the path already contains the start of the file, only the rest is
+     * requested. Failed attempts are retried, continuing from where the previous
+     * attempt stopped. If the hash of the complete file does not match, the file is
+     * deleted.
+     *
+     * @param url The url to download from.
+     * @param sha1 The expected sha1 hash of the file.
+     * @param path The path to download to.
+     * @throws IOException If an I/O error occurs in the last attempt.
+     */
     private static void download(String url, String sha1, Path path) throws IOException {
-        try (InputStream in = new URL(url).openStream()) {
-            byte[] bytes = in.readAllBytes();
-            MessageDigest messageDigest;
+        byte[] fileBytes = null;
+        for (int attempt = 1; fileBytes == null; attempt++) {
             try {
-                messageDigest = MessageDigest.getInstance("SHA-1");
-            } catch (NoSuchAlgorithmException e) {
-                // Should never happen as all Java platforms are required to implement SHA-1
-                throw new RuntimeException(e);
+                fileBytes = downloadAttempt(new URL(url), path);
+            } catch (IOException e) {
+                if (attempt == DOWNLOAD_ATTEMPTS) {
+                    throw e;
+                }
+                Praeter.get().getLogger().warning("Download of " + url + " failed (attempt "
+                    + attempt + " of " + DOWNLOAD_ATTEMPTS + "): " + e);
+            }
+        }
+        String fileSha1 = BaseEncoding.base16().encode(fileBytes);
+        if (!sha1.equalsIgnoreCase(fileSha1)) {
+            Files.deleteIfExists(path);
+            throw new RuntimeException("Download failed, sha1 hash of downloaded file did not match. Expected: " + sha1 + " Found: " + fileSha1 + " for file " + path);
+        }
+    }
+
+    /**
+     * Make one attempt to download the rest of a file.
+     *
+     * @param url The url to download from.
+     * @param path The path to download to.
+     * @return The sha1 hash of the whole file.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static byte[] downloadAttempt(URL url, Path path) throws IOException {
+        long offset = Files.isRegularFile(path) ? Files.size(path) : 0;
+        URLConnection connection = open(url, offset);
+        MessageDigest messageDigest = createSha1Digest();
+        boolean append = false;
+        if (connection instanceof HttpURLConnection http) {
+            int status = http.getResponseCode();
+            if (status == 416 && offset > 0) {
+                // The range starts at the end of the file, so the file is complete.
+                // If it is not, the hash will not match and it is downloaded again.
+                http.disconnect();
+                digestFile(path, messageDigest);
+                return messageDigest.digest();
+            }
+            if (status == HttpURLConnection.HTTP_PARTIAL) {
+                String contentRange = http.getHeaderField("Content-Range");
+                if (contentRange == null || !contentRange.startsWith("bytes " + offset + "-")) {
+                    http.disconnect();
+                    throw new IOException("Unexpected Content-Range " + contentRange + " for offset " + offset);
+                }
+                append = true;
+            } else if (status != HttpURLConnection.HTTP_OK) {
+                http.disconnect();
+                throw new IOException("Unexpected response " + status + " from " + url);
             }
-            byte[] fileBytes = messageDigest.digest(bytes);
-            String fileSha1 = BaseEncoding.base16().encode(fileBytes);
-            if (!sha1.equalsIgnoreCase(fileSha1)) {
-                throw new RuntimeException("Download failed, sha1 hash of downloaded file did not match. Expected: " + sha1 + " Found: " + fileSha1 + " for file " + path);
+            // A 200 response contains the whole file, for example when the server
+            // does not support range requests.
+        }
+        if (append) {
+            Praeter.get().getLogger().info("    Continuing download from " + offset + " bytes");
+            digestFile(path, messageDigest);
+        }
+        // Stream to the file while hashing, so that the file is never in memory
+        try (InputStream in = connection.getInputStream();
+             OutputStream out = append
+                 ? Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                 : Files.newOutputStream(path)) {
+            byte[] buffer = new byte[64 * 1024];
+            long received = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                messageDigest.update(buffer, 0, read);
+                received += read;
+            }
+            // A connection that is closed early may look like the end of the stream
+            long expected = connection.getContentLengthLong();
+            if (expected >= 0 && received != expected) {
+                throw new IOException("Connection closed after " + received + " of " + expected + " bytes");
+            }
+        }
+        return messageDigest.digest();
+    }
+
+    private static void digestFile(Path path, MessageDigest messageDigest) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, read);
             }
-            Files.write(path, bytes);
         }
     }
 }
@@ -0,0 +1,132 @@
+package ca.bkaw.praeter.core.resources.pack.memory;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A {@link SeekableByteChannel} for a file in a {@link MemoryFileSystem}.
+ * <p>
+ * Writable channels work on a copy of the contents that replaces the contents of
+ * the file when the channel is closed.
+ */
+final class MemoryByteChannel implements SeekableByteChannel {
+    private final Consumer<byte[]> onClose;
+    private byte[] data;
+    private boolean copied;
+    private long size;
+    private long position;
+    private boolean open = true;
+
+    /**
+     * Create a new {@link MemoryByteChannel}.
+     *
+     * @param data The contents. Will not be modified.
+     * @param size The size of the contents.
+     * @param onClose The consumer to call with the new contents when the channel is
+     *                closed, or null if the channel is read-only.
+     */
+    MemoryByteChannel(byte[] data, long size, @Nullable Consumer<byte[]> onClose) {
+        this.data = data;
+        this.size = size;
+        this.onClose = onClose;
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (!this.open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        this.checkOpen();
+        if (this.position >= this.size) {
+            return -1;
+        }
+        int length = (int) Math.min(dst.remaining(), this.size - this.position);
+        dst.put(this.data, (int) this.position, length);
+        this.position += length;
+        return length;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        this.checkOpen();
+        if (this.onClose == null) {
+            throw new NonWritableChannelException();
+        }
+        int length = src.remaining();
+        long end = this.position + length;
+        if (end > Integer.MAX_VALUE) {
+            throw new IOException("Files in memory can not be larger than 2 GB.");
+        }
+        if (!this.copied || end > this.data.length) {
+            // Never write to the array that was passed in, it may be shared
+            int capacity = (int) Math.max(end, Math.min(Integer.MAX_VALUE - 8, this.data.length * 2L));
+            this.data = Arrays.copyOf(this.data, capacity);
+            this.copied = true;
+        }
+        src.get(this.data, (int) this.position, length);
+        this.position = end;
+        this.size = Math.max(this.size, end);
+        return length;
+    }
+
+    @Override
+    public long position() throws IOException {
+        this.checkOpen();
+        return this.position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        this.checkOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        this.checkOpen();
+        return this.size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        this.checkOpen();
+        if (this.onClose == null) {
+            throw new NonWritableChannelException();
+        }
+        if (size < this.size) {
+            this.size = size;
+        }
+        this.position = Math.min(this.position, size);
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    @Override
+    public void close() {
+        if (!this.open) {
+            return;
+        }
+        this.open = false;
+        if (this.onClose != null) {
+            this.onClose.accept(Arrays.copyOf(this.data, (int) this.size));
+        }
+    }
+}
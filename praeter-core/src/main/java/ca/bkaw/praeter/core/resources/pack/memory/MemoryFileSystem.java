@@ -0,0 +1,471 @@
+package ca.bkaw.praeter.core.resources.pack.memory;
+
+import ca.bkaw.praeter.core.resources.pack.zip.RawZipEntry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A {@link FileSystem} that stores all files in memory.
+ * <p>
+ * Used to build packs without writing to the disk. The files are lost when the file
+ * system is closed, so packs in memory need to be written to a file to be kept.
+ * <p>
+ * Reading is thread-safe. Files and directories can be created and deleted from
+ * multiple threads, but writing to the same file from multiple threads at once is
+ * not supported.
+ */
+public final class MemoryFileSystem extends FileSystem {
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private final MemoryFileSystemProvider provider;
+    private final int id = NEXT_ID.getAndIncrement();
+    private final Map<String, MemoryNode> nodes = new ConcurrentHashMap<>();
+    private volatile boolean open = true;
+    private volatile Consumer<String> fileListener;
+
+    MemoryFileSystem(MemoryFileSystemProvider provider) {
+        this.provider = provider;
+        this.nodes.put("", MemoryNode.directory());
+    }
+
+    /**
+     * Create a new, empty, {@link MemoryFileSystem}.
+     *
+     * @return The file system.
+     */
+    public static MemoryFileSystem create() {
+        return new MemoryFileSystem(MemoryFileSystemProvider.INSTANCE);
+    }
+
+    /**
+     * Create a new file system with the same files as this file system.
+     * <p>
+     * The contents of the files are shared and not copied, which is possible since
+     * they are never modified in place. Writing to a file in one of the file systems
+     * therefore does not affect the other, and copying is cheap even for large file
+     * systems.
+     *
+     * @return The new file system.
+     */
+    public synchronized MemoryFileSystem copy() {
+        this.checkOpen();
+        MemoryFileSystem copy = new MemoryFileSystem(this.provider);
+        this.nodes.forEach((key, node) -> copy.nodes.put(key, node.copy()));
+        return copy;
+    }
+
+    int getId() {
+        return this.id;
+    }
+
+    /**
+     * Set the listener that is called whenever a file is created, written to or
+     * deleted. The listener is called with the key of the file, which is its path
+     * relative to the root using {@code /} as the separator.
+     * <p>
+     * The listener may be called on any thread that writes to the file system. It is
+     * not copied to {@link #copy() copies} of the file system.
+     *
+     * @param fileListener The listener, or null to remove it.
+     */
+    public void setFileListener(@Nullable Consumer<String> fileListener) {
+        this.fileListener = fileListener;
+    }
+
+    /**
+     * Set the contents of a file and notify the file listener.
+     *
+     * @param path The path of the file.
+     * @param node The node of the file.
+     * @param data The new contents.
+     */
+    void setData(MemoryPath path, MemoryNode node, byte[] data) {
+        node.setData(data);
+        this.onFileChanged(path.getKey());
+    }
+
+    private void onFileChanged(String key) {
+        Consumer<String> fileListener = this.fileListener;
+        if (fileListener != null) {
+            fileListener.accept(key);
+        }
+    }
+
+    private void checkOpen() {
+        if (!this.open) {
+            throw new ClosedFileSystemException();
+        }
+    }
+
+    /**
+     * Get the node at the specified path.
+     *
+     * @param path The path.
+     * @return The node.
+     * @throws NoSuchFileException If there is no file at the path.
+     */
+    @NotNull
+    MemoryNode getNode(MemoryPath path) throws NoSuchFileException {
+        this.checkOpen();
+        MemoryNode node = this.nodes.get(path.getKey());
+        if (node == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        return node;
+    }
+
+    /**
+     * Get the node of the file at the specified path.
+     *
+     * @param path The path.
+     * @return The node.
+     * @throws NoSuchFileException If there is no file at the path.
+     * @throws IOException If the path is a directory.
+     */
+    @NotNull
+    MemoryNode getFileNode(MemoryPath path) throws IOException {
+        MemoryNode node = this.getNode(path);
+        if (node.isDirectory()) {
+            throw new IOException(path + " is a directory.");
+        }
+        return node;
+    }
+
+    /**
+     * Create a node at the specified path. The parent must be an existing directory.
+     *
+     * @param path The path.
+     * @param node The node to create.
+     * @throws FileAlreadyExistsException If a file already exists at the path.
+     * @throws NoSuchFileException If the parent does not exist.
+     */
+    synchronized void createNode(MemoryPath path, MemoryNode node) throws IOException {
+        this.checkOpen();
+        String key = path.getKey();
+        if (this.nodes.containsKey(key)) {
+            throw new FileAlreadyExistsException(path.toString());
+        }
+        int slash = key.lastIndexOf('/');
+        String parentKey = slash == -1 ? "" : key.substring(0, slash);
+        MemoryNode parent = this.nodes.get(parentKey);
+        if (parent == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        if (!parent.isDirectory()) {
+            throw new NotDirectoryException(parentKey);
+        }
+        this.nodes.put(key, node);
+        parent.getChildren().add(key.substring(slash + 1));
+        if (!node.isDirectory()) {
+            this.onFileChanged(key);
+        }
+    }
+
+    /**
+     * Get the node of the file at the specified path, creating an empty file if it
+     * does not exist.
+     *
+     * @param path The path.
+     * @param createNew Whether to fail if the file exists.
+     * @return The node.
+     * @throws IOException If an I/O error occurs.
+     */
+    synchronized MemoryNode getOrCreateFileNode(MemoryPath path, boolean createNew) throws IOException {
+        this.checkOpen();
+        MemoryNode node = this.nodes.get(path.getKey());
+        if (node != null) {
+            if (createNew) {
+                throw new FileAlreadyExistsException(path.toString());
+            }
+            if (node.isDirectory()) {
+                throw new IOException(path + " is a directory.");
+            }
+            return node;
+        }
+        node = MemoryNode.file(new byte[0]);
+        this.createNode(path, node);
+        return node;
+    }
+
+    /**
+     * Delete the node at the specified path.
+     *
+     * @param path The path.
+     * @throws NoSuchFileException If there is no file at the path.
+     * @throws DirectoryNotEmptyException If the path is a directory that is not empty.
+     */
+    synchronized void deleteNode(MemoryPath path) throws IOException {
+        this.checkOpen();
+        String key = path.getKey();
+        if (key.isEmpty()) {
+            throw new IOException("Can not delete the root directory.");
+        }
+        MemoryNode node = this.nodes.get(key);
+        if (node == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        if (node.isDirectory() && !node.getChildren().isEmpty()) {
+            throw new DirectoryNotEmptyException(path.toString());
+        }
+        this.nodes.remove(key);
+        int slash = key.lastIndexOf('/');
+        String parentKey = slash == -1 ? "" : key.substring(0, slash);
+        this.nodes.get(parentKey).getChildren().remove(key.substring(slash + 1));
+        if (!node.isDirectory()) {
+            this.onFileChanged(key);
+        }
+    }
+
+    private MemoryPath check(Path path) {
+        if (!(path instanceof MemoryPath memoryPath) || memoryPath.getFileSystem() != this) {
+            throw new ProviderMismatchException();
+        }
+        return memoryPath;
+    }
+
+    /**
+     * Check whether there is a regular file at the path.
+     * <p>
+     * Unlike {@link java.nio.file.Files#isRegularFile(Path, java.nio.file.LinkOption...)},
+     * this does not create an exception when there is no file at the path.
+     *
+     * @param path The path.
+     * @return Whether there is a file.
+     */
+    public boolean isFile(Path path) {
+        this.checkOpen();
+        MemoryNode node = this.nodes.get(this.check(path).getKey());
+        return node != null && !node.isDirectory();
+    }
+
+    /**
+     * Create a file from a raw zip entry. The contents are decompressed when the
+     * file is first read.
+     * <p>
+     * The parent directory must exist.
+     *
+     * @param path The path of the file to create.
+     * @param entry The raw entry.
+     * @throws FileAlreadyExistsException If a file already exists at the path.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void createFile(Path path, RawZipEntry entry) throws IOException {
+        this.createNode(this.check(path), MemoryNode.file(entry));
+    }
+
+    /**
+     * Get the raw zip entry that a file was created from, if the file has not been
+     * written to since.
+     * <p>
+     * Copies of the file keep the raw entry.
+     *
+     * @param path The path of the file.
+     * @return The raw entry, or null if the file was not created from a raw entry or
+     * has been modified.
+     * @throws IOException If there is no file at the path.
+     */
+    @Nullable
+    public RawZipEntry getRawEntry(Path path) throws IOException {
+        return this.getFileNode(this.check(path)).getRawEntry();
+    }
+
+    @NotNull
+    @Override
+    public FileSystemProvider provider() {
+        return this.provider;
+    }
+
+    @Override
+    public void close() {
+        this.open = false;
+        this.nodes.clear();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @NotNull
+    @Override
+    public String getSeparator() {
+        return "/";
+    }
+
+    @NotNull
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        return Collections.singleton(this.getPath("/"));
+    }
+
+    @NotNull
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        return Collections.emptyList();
+    }
+
+    @NotNull
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return Collections.singleton("basic");
+    }
+
+    @NotNull
+    @Override
+    public Path getPath(@NotNull String first, @NotNull String... more) {
+        String path = more.length == 0 ? first : first + "/" + String.join("/", more);
+        return MemoryPath.parse(this, path);
+    }
+
+    @NotNull
+    @Override
+    public PathMatcher getPathMatcher(@NotNull String syntaxAndPattern) {
+        int colon = syntaxAndPattern.indexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected syntax:pattern, got " + syntaxAndPattern);
+        }
+        String syntax = syntaxAndPattern.substring(0, colon);
+        String pattern = syntaxAndPattern.substring(colon + 1);
+        Pattern regex;
+        if (syntax.equalsIgnoreCase("glob")) {
+            regex = Pattern.compile(globToRegex(pattern));
+        } else if (syntax.equalsIgnoreCase("regex")) {
+            regex = Pattern.compile(pattern);
+        } else {
+            throw new UnsupportedOperationException("The syntax " + syntax + " is not supported.");
+        }
+        return path -> regex.matcher(path.toString()).matches();
+    }
+
+    /**
+     * Convert a glob pattern to a regular expression, following the rules of
+     * {@link FileSystem#getPathMatcher(String)}.
+     *
+     * @param glob The glob pattern.
+     * @return The regular expression.
+     * @throws PatternSyntaxException If the glob is invalid.
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder("^");
+        boolean inGroup = false;
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i++);
+            switch (c) {
+                case '\\' -> {
+                    if (i == glob.length()) {
+                        throw new PatternSyntaxException("No character to escape", glob, i - 1);
+                    }
+                    appendLiteral(regex, glob.charAt(i++));
+                }
+                case '*' -> {
+                    if (i < glob.length() && glob.charAt(i) == '*') {
+                        // Crosses directory boundaries
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                }
+                case '?' -> regex.append("[^/]");
+                case '[' -> {
+                    regex.append("[[^/]&&[");
+                    if (i < glob.length() && glob.charAt(i) == '!') {
+                        regex.append('^');
+                        i++;
+                    } else if (i < glob.length() && glob.charAt(i) == '^') {
+                        regex.append("\\^");
+                        i++;
+                    }
+                    boolean closed = false;
+                    while (i < glob.length()) {
+                        char b = glob.charAt(i++);
+                        if (b == ']') {
+                            closed = true;
+                            break;
+                        }
+                        if (b == '/') {
+                            throw new PatternSyntaxException("Explicit 'name separator' in class", glob, i - 1);
+                        }
+                        if (b == '\\' || b == '[' || b == '&' && i < glob.length() && glob.charAt(i) == '&') {
+                            regex.append('\\');
+                        }
+                        regex.append(b);
+                    }
+                    if (!closed) {
+                        throw new PatternSyntaxException("Missing ']'", glob, i - 1);
+                    }
+                    regex.append("]]");
+                }
+                case '{' -> {
+                    if (inGroup) {
+                        throw new PatternSyntaxException("Cannot nest groups", glob, i - 1);
+                    }
+                    regex.append("(?:(?:");
+                    inGroup = true;
+                }
+                case '}' -> {
+                    if (inGroup) {
+                        regex.append("))");
+                        inGroup = false;
+                    } else {
+                        regex.append('}');
+                    }
+                }
+                case ',' -> regex.append(inGroup ? ")|(?:" : ",");
+                default -> appendLiteral(regex, c);
+            }
+        }
+        if (inGroup) {
+            throw new PatternSyntaxException("Missing '}'", glob, glob.length() - 1);
+        }
+        return regex.append('$').toString();
+    }
+
+    private static void appendLiteral(StringBuilder regex, char c) {
+        if ("\\^$.|?*+()[]{}".indexOf(c) != -1) {
+            regex.append('\\');
+        }
+        regex.append(c);
+    }
+
+    @NotNull
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException();
+    }
+
+    @NotNull
+    @Override
+    public WatchService newWatchService() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,359 @@
+package ca.bkaw.praeter.core.resources.pack.memory;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@link FileSystemProvider} for {@link MemoryFileSystem}s.
+ * <p>
+ * The provider is not installed, file systems are created using
+ * {@link MemoryFileSystem#create()}.
+ */
+public final class MemoryFileSystemProvider extends FileSystemProvider {
+    public static final String SCHEME = "praeter-memory";
+    static final MemoryFileSystemProvider INSTANCE = new MemoryFileSystemProvider();
+
+    private MemoryFileSystemProvider() {}
+
+    private static MemoryPath check(Path path) {
+        if (!(path instanceof MemoryPath memoryPath)) {
+            throw new ProviderMismatchException();
+        }
+        return memoryPath;
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) {
+        return new MemoryFileSystem(this);
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+        throw new UnsupportedOperationException("Memory file systems can not be looked up.");
+    }
+
+    @NotNull
+    @Override
+    public Path getPath(@NotNull URI uri) {
+        throw new UnsupportedOperationException("Memory file systems can not be looked up.");
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        MemoryPath memoryPath = check(path);
+        MemoryFileSystem fileSystem = memoryPath.getFileSystem();
+        boolean write = options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND);
+        if (!write) {
+            byte[] data = fileSystem.getFileNode(memoryPath).getData();
+            return new MemoryByteChannel(data, data.length, null);
+        }
+
+        MemoryNode node = this.openForWriting(memoryPath, options);
+        byte[] data;
+        long size;
+        if (options.contains(StandardOpenOption.TRUNCATE_EXISTING)) {
+            data = new byte[0];
+            size = 0;
+        } else {
+            data = node.getData();
+            size = data.length;
+        }
+        MemoryByteChannel channel = new MemoryByteChannel(data, size,
+            newData -> fileSystem.setData(memoryPath, node, newData));
+        if (options.contains(StandardOpenOption.APPEND)) {
+            channel.position(size);
+        }
+        return channel;
+    }
+
+    private MemoryNode openForWriting(MemoryPath path, Set<? extends OpenOption> options) throws IOException {
+        MemoryFileSystem fileSystem = path.getFileSystem();
+        if (options.contains(StandardOpenOption.CREATE_NEW)) {
+            return fileSystem.getOrCreateFileNode(path, true);
+        }
+        if (options.contains(StandardOpenOption.CREATE)) {
+            return fileSystem.getOrCreateFileNode(path, false);
+        }
+        return fileSystem.getFileNode(path);
+    }
+
+    @Override
+    public InputStream newInputStream(Path path, OpenOption... options) throws IOException {
+        MemoryPath memoryPath = check(path);
+        return new ByteArrayInputStream(memoryPath.getFileSystem().getFileNode(memoryPath).getData());
+    }
+
+    @Override
+    public OutputStream newOutputStream(Path path, OpenOption... options) throws IOException {
+        MemoryPath memoryPath = check(path);
+        List<OpenOption> optionList = Arrays.asList(options);
+        boolean replaces = optionList.isEmpty()
+            || optionList.contains(StandardOpenOption.TRUNCATE_EXISTING)
+            || optionList.contains(StandardOpenOption.CREATE_NEW);
+        if (!replaces || optionList.contains(StandardOpenOption.APPEND) || optionList.contains(StandardOpenOption.READ)) {
+            // Writes into the existing contents, use a channel
+            return super.newOutputStream(path, options);
+        }
+        Set<OpenOption> optionSet = options.length == 0
+            ? Set.of(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+            : Set.copyOf(optionList);
+        MemoryNode node = this.openForWriting(memoryPath, optionSet);
+        // The contents are replaced when the stream is closed
+        return new ByteArrayOutputStream() {
+            private boolean closed;
+
+            @Override
+            public void close() {
+                if (!this.closed) {
+                    this.closed = true;
+                    memoryPath.getFileSystem().setData(memoryPath, node, this.toByteArray());
+                }
+            }
+        };
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        MemoryPath memoryPath = check(dir);
+        MemoryNode node = memoryPath.getFileSystem().getNode(memoryPath);
+        if (!node.isDirectory()) {
+            throw new NotDirectoryException(dir.toString());
+        }
+        List<Path> entries = new ArrayList<>();
+        for (String name : node.getChildren()) {
+            Path child = dir.resolve(name);
+            if (filter == null || filter.accept(child)) {
+                entries.add(child);
+            }
+        }
+        return new DirectoryStream<>() {
+            @Override
+            public Iterator<Path> iterator() {
+                return entries.iterator();
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+        MemoryPath memoryPath = check(dir);
+        memoryPath.getFileSystem().createNode(memoryPath, MemoryNode.directory());
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        MemoryPath memoryPath = check(path);
+        memoryPath.getFileSystem().deleteNode(memoryPath);
+    }
+
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) throws IOException {
+        MemoryPath sourcePath = check(source);
+        MemoryPath targetPath = check(target);
+        MemoryNode sourceNode = sourcePath.getFileSystem().getNode(sourcePath);
+        MemoryFileSystem targetFileSystem = targetPath.getFileSystem();
+        if (Arrays.asList(options).contains(StandardCopyOption.REPLACE_EXISTING)) {
+            try {
+                targetFileSystem.deleteNode(targetPath);
+            } catch (NoSuchFileException ignored) {}
+        }
+        // File contents are never modified in place, so the array can be shared
+        MemoryNode targetNode = sourceNode.isDirectory()
+            ? MemoryNode.directory()
+            : sourceNode.copyFile();
+        if (Arrays.asList(options).contains(StandardCopyOption.COPY_ATTRIBUTES)) {
+            targetNode.setLastModifiedTime(sourceNode.getLastModifiedTime());
+        }
+        targetFileSystem.createNode(targetPath, targetNode);
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options) throws IOException {
+        MemoryPath sourcePath = check(source);
+        MemoryNode sourceNode = sourcePath.getFileSystem().getNode(sourcePath);
+        if (sourceNode.isDirectory() && !sourceNode.getChildren().isEmpty()) {
+            throw new IOException("Moving non-empty directories is not supported.");
+        }
+        this.copy(source, target, options);
+        this.delete(source);
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) {
+        return path instanceof MemoryPath memoryPath
+            && path2 instanceof MemoryPath memoryPath2
+            && memoryPath.getFileSystem() == memoryPath2.getFileSystem()
+            && memoryPath.getKey().equals(memoryPath2.getKey());
+    }
+
+    @Override
+    public boolean isHidden(Path path) {
+        return false;
+    }
+
+    @Override
+    public FileStore getFileStore(Path path) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        MemoryPath memoryPath = check(path);
+        memoryPath.getFileSystem().getNode(memoryPath);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+        if (type != BasicFileAttributeView.class) {
+            return null;
+        }
+        MemoryPath memoryPath = check(path);
+        return (V) new BasicFileAttributeView() {
+            @Override
+            public String name() {
+                return "basic";
+            }
+
+            @Override
+            public BasicFileAttributes readAttributes() throws IOException {
+                return new MemoryFileAttributes(memoryPath.getFileSystem().getNode(memoryPath));
+            }
+
+            @Override
+            public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) throws IOException {
+                if (lastModifiedTime != null) {
+                    memoryPath.getFileSystem().getNode(memoryPath).setLastModifiedTime(lastModifiedTime);
+                }
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException {
+        if (type != BasicFileAttributes.class) {
+            throw new UnsupportedOperationException();
+        }
+        MemoryPath memoryPath = check(path);
+        return (A) new MemoryFileAttributes(memoryPath.getFileSystem().getNode(memoryPath));
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
+        BasicFileAttributes attrs = this.readAttributes(path, BasicFileAttributes.class, options);
+        Map<String, Object> map = new HashMap<>();
+        map.put("lastModifiedTime", attrs.lastModifiedTime());
+        map.put("lastAccessTime", attrs.lastAccessTime());
+        map.put("creationTime", attrs.creationTime());
+        map.put("size", attrs.size());
+        map.put("isRegularFile", attrs.isRegularFile());
+        map.put("isDirectory", attrs.isDirectory());
+        map.put("isSymbolicLink", attrs.isSymbolicLink());
+        map.put("isOther", attrs.isOther());
+        map.put("fileKey", attrs.fileKey());
+        return map;
+    }
+
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options) throws IOException {
+        if (!attribute.equals("lastModifiedTime") && !attribute.equals("basic:lastModifiedTime")) {
+            throw new UnsupportedOperationException("Only lastModifiedTime can be set.");
+        }
+        MemoryPath memoryPath = check(path);
+        memoryPath.getFileSystem().getNode(memoryPath).setLastModifiedTime((FileTime) value);
+    }
+
+    /**
+     * The attributes of a file in a {@link MemoryFileSystem}.
+     *
+     * @param node The node.
+     */
+    private record MemoryFileAttributes(MemoryNode node) implements BasicFileAttributes {
+        @Override
+        public FileTime lastModifiedTime() {
+            return this.node.getLastModifiedTime();
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return this.node.getLastModifiedTime();
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return this.node.getCreationTime();
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return !this.node.isDirectory();
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return this.node.isDirectory();
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return this.node.size();
+        }
+
+        @Override
+        public Object fileKey() {
+            return this.node;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ca.bkaw.praeter.core.resources.pack.memory;
+
+import ca.bkaw.praeter.core.resources.pack.zip.RawZipEntry;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.attribute.FileTime;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * A file or directory in a {@link MemoryFileSystem}.
+ * <p>
+ * The contents of a file are never modified in place, writing to a file replaces
+ * the array. This allows the contents to be shared between files without copying.
+ * <p>
+ * Files can also be created from a {@link RawZipEntry}, in which case the contents
+ * are decompressed the first time they are read. The raw entry is kept until the
+ * file is written to, so that it can be written to a zip file without being
+ * compressed again.
+ */
+final class MemoryNode {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final NavigableSet<String> children;
+    private final FileTime creationTime;
+    private volatile byte[] data;
+    private volatile RawZipEntry rawEntry;
+    private volatile FileTime lastModifiedTime;
+
+    private MemoryNode(@Nullable NavigableSet<String> children, @Nullable byte[] data,
+                       @Nullable RawZipEntry rawEntry) {
+        this.children = children;
+        this.data = data;
+        this.rawEntry = rawEntry;
+        this.creationTime = FileTime.fromMillis(System.currentTimeMillis());
+        this.lastModifiedTime = this.creationTime;
+    }
+
+    static MemoryNode directory() {
+        return new MemoryNode(new ConcurrentSkipListSet<>(), EMPTY, null);
+    }
+
+    static MemoryNode file(byte[] data) {
+        return new MemoryNode(null, data, null);
+    }
+
+    static MemoryNode file(RawZipEntry rawEntry) {
+        return new MemoryNode(null, null, rawEntry);
+    }
+
+    /**
+     * Create a new file with the same contents as this file, sharing the contents
+     * and the raw entry.
+     *
+     * @return The new node.
+     */
+    MemoryNode copyFile() {
+        return new MemoryNode(null, this.data, this.rawEntry);
+    }
+
+    /**
+     * Create a new node with the same contents as this node. Files share their
+     * contents, and directories get a new set with the same children.
+     *
+     * @return The new node.
+     */
+    MemoryNode copy() {
+        if (this.children != null) {
+            return new MemoryNode(new ConcurrentSkipListSet<>(this.children), EMPTY, null);
+        }
+        return this.copyFile();
+    }
+
+    boolean isDirectory() {
+        return this.children != null;
+    }
+
+    /**
+     * Get the sorted names of the children of this directory.
+     *
+     * @return The names of the children.
+     */
+    NavigableSet<String> getChildren() {
+        if (this.children == null) {
+            throw new IllegalStateException("Not a directory.");
+        }
+        return this.children;
+    }
+
+    /**
+     * Get the contents of this file. The returned array must not be modified.
+     *
+     * @return The contents.
+     * @throws IOException If the contents could not be decompressed.
+     */
+    byte[] getData() throws IOException {
+        byte[] data = this.data;
+        if (data == null) {
+            synchronized (this) {
+                data = this.data;
+                if (data == null) {
+                    data = this.rawEntry.decompress();
+                    this.data = data;
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Get the raw zip entry of this file, if the file was created from a raw entry
+     * and has not been written to since.
+     *
+     * @return The raw entry, or null.
+     */
+    @Nullable
+    RawZipEntry getRawEntry() {
+        return this.rawEntry;
+    }
+
+    /**
+     * Replace the contents of this file. The array must not be modified after this
+     * call.
+     *
+     * @param data The new contents.
+     */
+    void setData(byte[] data) {
+        this.data = data;
+        this.rawEntry = null;
+        this.lastModifiedTime = FileTime.fromMillis(System.currentTimeMillis());
+    }
+
+    FileTime getCreationTime() {
+        return this.creationTime;
+    }
+
+    FileTime getLastModifiedTime() {
+        return this.lastModifiedTime;
+    }
+
+    void setLastModifiedTime(FileTime lastModifiedTime) {
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+    long size() {
+        byte[] data = this.data;
+        return data != null ? data.length : this.rawEntry.size();
+    }
+}
@@ -0,0 +1,306 @@
+package ca.bkaw.praeter.core.resources.pack.memory;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link Path} in a {@link MemoryFileSystem}.
+ * <p>
+ * The separator is always {@code /}. Relative paths are resolved against the root
+ * of the file system.
+ */
+final class MemoryPath implements Path {
+    private static final String[] NO_NAMES = new String[0];
+
+    private final MemoryFileSystem fileSystem;
+    private final boolean absolute;
+    private final String[] names;
+
+    MemoryPath(MemoryFileSystem fileSystem, boolean absolute, String[] names) {
+        this.fileSystem = fileSystem;
+        this.absolute = absolute;
+        this.names = names;
+    }
+
+    /**
+     * Parse a path string.
+     *
+     * @param fileSystem The file system.
+     * @param path The path string.
+     * @return The path.
+     */
+    static MemoryPath parse(MemoryFileSystem fileSystem, String path) {
+        boolean absolute = path.startsWith("/");
+        List<String> names = new ArrayList<>();
+        for (String name : path.split("/")) {
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+        }
+        return new MemoryPath(fileSystem, absolute, names.toArray(NO_NAMES));
+    }
+
+    private boolean isEmpty() {
+        return !this.absolute && this.names.length == 0;
+    }
+
+    /**
+     * Get the key of the file that this path locates in the file system. The key is
+     * the normalized absolute path without the leading slash.
+     *
+     * @return The key.
+     */
+    String getKey() {
+        // Relative paths are resolved against the root
+        return String.join("/", this.normalizeNames(true));
+    }
+
+    private String[] normalizeNames(boolean absolute) {
+        List<String> normalized = new ArrayList<>(this.names.length);
+        for (String name : this.names) {
+            if (name.equals(".")) {
+                continue;
+            }
+            if (name.equals("..")) {
+                if (!normalized.isEmpty() && !normalized.get(normalized.size() - 1).equals("..")) {
+                    normalized.remove(normalized.size() - 1);
+                    continue;
+                }
+                if (absolute) {
+                    // Going above the root stays at the root
+                    continue;
+                }
+            }
+            normalized.add(name);
+        }
+        return normalized.toArray(NO_NAMES);
+    }
+
+    private static MemoryPath check(Path path) {
+        if (!(path instanceof MemoryPath memoryPath)) {
+            throw new ProviderMismatchException();
+        }
+        return memoryPath;
+    }
+
+    @NotNull
+    @Override
+    public MemoryFileSystem getFileSystem() {
+        return this.fileSystem;
+    }
+
+    @Override
+    public boolean isAbsolute() {
+        return this.absolute;
+    }
+
+    @Override
+    public Path getRoot() {
+        return this.absolute ? new MemoryPath(this.fileSystem, true, NO_NAMES) : null;
+    }
+
+    @Override
+    public Path getFileName() {
+        if (this.isEmpty()) {
+            return this;
+        }
+        if (this.names.length == 0) {
+            return null;
+        }
+        return new MemoryPath(this.fileSystem, false, new String[] {this.names[this.names.length - 1]});
+    }
+
+    @Override
+    public Path getParent() {
+        if (this.names.length == 0) {
+            return null;
+        }
+        if (this.names.length == 1) {
+            // The parent of a single name is the root, or nothing for relative paths
+            return this.getRoot();
+        }
+        return new MemoryPath(this.fileSystem, this.absolute, Arrays.copyOf(this.names, this.names.length - 1));
+    }
+
+    @Override
+    public int getNameCount() {
+        return this.isEmpty() ? 1 : this.names.length;
+    }
+
+    @NotNull
+    @Override
+    public Path getName(int index) {
+        if (this.isEmpty() && index == 0) {
+            return this;
+        }
+        if (index < 0 || index >= this.names.length) {
+            throw new IllegalArgumentException();
+        }
+        return new MemoryPath(this.fileSystem, false, new String[] {this.names[index]});
+    }
+
+    @NotNull
+    @Override
+    public Path subpath(int beginIndex, int endIndex) {
+        if (beginIndex < 0 || endIndex > this.names.length || beginIndex >= endIndex) {
+            throw new IllegalArgumentException();
+        }
+        return new MemoryPath(this.fileSystem, false, Arrays.copyOfRange(this.names, beginIndex, endIndex));
+    }
+
+    @Override
+    public boolean startsWith(@NotNull Path other) {
+        if (!(other instanceof MemoryPath path) || path.fileSystem != this.fileSystem) {
+            return false;
+        }
+        if (path.absolute != this.absolute || path.names.length > this.names.length) {
+            return false;
+        }
+        if (path.isEmpty()) {
+            return this.isEmpty();
+        }
+        for (int i = 0; i < path.names.length; i++) {
+            if (!path.names[i].equals(this.names[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endsWith(@NotNull Path other) {
+        if (!(other instanceof MemoryPath path) || path.fileSystem != this.fileSystem) {
+            return false;
+        }
+        if (path.absolute) {
+            return this.equals(path);
+        }
+        if (path.isEmpty()) {
+            return this.isEmpty();
+        }
+        int offset = this.names.length - path.names.length;
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < path.names.length; i++) {
+            if (!path.names[i].equals(this.names[offset + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public Path normalize() {
+        return new MemoryPath(this.fileSystem, this.absolute, this.normalizeNames(this.absolute));
+    }
+
+    @NotNull
+    @Override
+    public Path resolve(@NotNull Path other) {
+        MemoryPath path = check(other);
+        if (path.absolute) {
+            return path;
+        }
+        if (path.isEmpty()) {
+            return this;
+        }
+        String[] names = Arrays.copyOf(this.names, this.names.length + path.names.length);
+        System.arraycopy(path.names, 0, names, this.names.length, path.names.length);
+        return new MemoryPath(this.fileSystem, this.absolute, names);
+    }
+
+    @NotNull
+    @Override
+    public Path resolve(@NotNull String other) {
+        return this.resolve(parse(this.fileSystem, other));
+    }
+
+    @NotNull
+    @Override
+    public Path relativize(@NotNull Path other) {
+        MemoryPath path = check(other);
+        if (path.absolute != this.absolute) {
+            throw new IllegalArgumentException("Both paths must be absolute or relative.");
+        }
+        int common = 0;
+        while (common < this.names.length && common < path.names.length
+            && this.names[common].equals(path.names[common])) {
+            common++;
+        }
+        List<String> names = new ArrayList<>();
+        for (int i = common; i < this.names.length; i++) {
+            names.add("..");
+        }
+        names.addAll(Arrays.asList(path.names).subList(common, path.names.length));
+        return new MemoryPath(this.fileSystem, false, names.toArray(NO_NAMES));
+    }
+
+    @NotNull
+    @Override
+    public URI toUri() {
+        try {
+            return new URI(MemoryFileSystemProvider.SCHEME,
+                this.fileSystem.getId() + "!/" + this.getKey(), null);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Path toAbsolutePath() {
+        return this.absolute ? this : new MemoryPath(this.fileSystem, true, this.names);
+    }
+
+    @NotNull
+    @Override
+    public Path toRealPath(@NotNull LinkOption... options) {
+        return this.toAbsolutePath().normalize();
+    }
+
+    @NotNull
+    @Override
+    public WatchKey register(@NotNull WatchService watcher,
+                             @NotNull WatchEvent.Kind<?>[] events,
+                             WatchEvent.Modifier... modifiers) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int compareTo(@NotNull Path other) {
+        return this.toString().compareTo(check(other).toString());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof MemoryPath path
+            && path.fileSystem == this.fileSystem
+            && path.absolute == this.absolute
+            && Arrays.equals(path.names, this.names);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(this.names) + (this.absolute ? 1 : 0);
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        String path = String.join("/", this.names);
+        return this.absolute ? "/" + path : path;
+    }
+}
@@ -0,0 +1,64 @@
+package ca.bkaw.praeter.core.resources.pack.output;
+
+import ca.bkaw.praeter.core.resources.pack.zip.RawZipEntry;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+/**
+ * Decides how each entry is compressed when a pack is written.
+ * <p>
+ * Files in formats that are already compressed, like PNG textures and OGG sounds,
+ * barely get smaller when deflated, so they are better stored as is. That saves
+ * time both when writing the pack and when the client reads it. Other files, which
+ * are mostly JSON, are deflated at the configured level.
+ *
+ * @param storedExtensions The file extensions, without the dot and in lower case,
+ *                         of files that are stored without compression.
+ * @param level The deflate compression level to use for other files, 0-9 or
+ *              {@link Deflater#DEFAULT_COMPRESSION}.
+ */
+public record CompressionPolicy(Set<String> storedExtensions, int level) {
+    /**
+     * The policy that stores PNG and OGG files and deflates other files at the
+     * default level.
+     */
+    public static final CompressionPolicy DEFAULT = new CompressionPolicy(Set.of("png", "ogg"), Deflater.DEFAULT_COMPRESSION);
+
+    public CompressionPolicy {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("The compression level must be between 0 and 9, or -1 for the default level.");
+        }
+        storedExtensions = storedExtensions.stream()
+            .map(extension -> extension.toLowerCase(Locale.ROOT))
+            .map(extension -> extension.startsWith(".") ? extension.substring(1) : extension)
+            .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Get whether the file at the path should be stored without compression.
+     *
+     * @param path The path of the file.
+     * @return Whether to store the file.
+     */
+    public boolean shouldStore(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot == -1 || dot < path.lastIndexOf('/')) {
+            return false;
+        }
+        return this.storedExtensions.contains(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Create the zip entry for a file.
+     *
+     * @param path The path of the file.
+     * @param contents The contents of the file. Must not be modified after this call.
+     * @return The raw entry.
+     */
+    public RawZipEntry compress(String path, byte[] contents) {
+        return this.shouldStore(path) ? RawZipEntry.store(contents) : RawZipEntry.deflate(contents, this.level);
+    }
+}
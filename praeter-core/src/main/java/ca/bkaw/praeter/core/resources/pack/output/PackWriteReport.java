@@ -0,0 +1,59 @@
+package ca.bkaw.praeter.core.resources.pack.output;
+
+import java.util.Locale;
+
+/**
+ * Statistics about a pack that was written by {@link PackZipWriter}, used to see the
+ * effect of the {@link CompressionPolicy}.
+ *
+ * @param storedEntries The amount of entries that were stored without compression.
+ * @param storedSize The total size of the stored entries.
+ * @param deflatedEntries The amount of entries that were deflated while writing.
+ * @param deflatedSize The total uncompressed size of the deflated entries.
+ * @param deflatedCompressedSize The total compressed size of the deflated entries.
+ * @param copiedEntries The amount of entries that were copied as they were already
+ *                      compressed, for example from plugin jars.
+ * @param copiedSize The total uncompressed size of the copied entries.
+ * @param copiedCompressedSize The total compressed size of the copied entries.
+ * @param fileSize The size of the written zip file.
+ * @param nanos The time it took to write the pack, in nanoseconds.
+ */
+public record PackWriteReport(int storedEntries, long storedSize,
+                              int deflatedEntries, long deflatedSize, long deflatedCompressedSize,
+                              int copiedEntries, long copiedSize, long copiedCompressedSize,
+                              long fileSize, long nanos) {
+    /**
+     * Get the total uncompressed size of all entries.
+     *
+     * @return The size in bytes.
+     */
+    public long uncompressedSize() {
+        return this.storedSize + this.deflatedSize + this.copiedSize;
+    }
+
+    /**
+     * Describe the report in a human-readable way.
+     *
+     * @return The description.
+     */
+    public String describe() {
+        return String.format(Locale.ROOT,
+            "%d entries, %s -> %s in %d ms (stored %d: %s, deflated %d: %s -> %s, copied %d: %s -> %s)",
+            this.storedEntries + this.deflatedEntries + this.copiedEntries,
+            formatSize(this.uncompressedSize()), formatSize(this.fileSize), this.nanos / 1_000_000,
+            this.storedEntries, formatSize(this.storedSize),
+            this.deflatedEntries, formatSize(this.deflatedSize), formatSize(this.deflatedCompressedSize),
+            this.copiedEntries, formatSize(this.copiedSize), formatSize(this.copiedCompressedSize)
+        );
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KiB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+}
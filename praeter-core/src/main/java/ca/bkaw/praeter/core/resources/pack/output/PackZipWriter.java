@@ -0,0 +1,322 @@
+package ca.bkaw.praeter.core.resources.pack.output;
+
+import ca.bkaw.praeter.core.resources.bake.BakedPackFile;
+import ca.bkaw.praeter.core.resources.pack.Pack;
+import ca.bkaw.praeter.core.resources.pack.memory.MemoryFileSystem;
+import ca.bkaw.praeter.core.resources.pack.zip.RawZipEntry;
+import ca.bkaw.praeter.core.resources.pack.zip.ZipWriter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Writes a {@link Pack} to a zip file in a reproducible way.
+ * <p>
+ * Entries are sorted by their path, all entries use the same fixed timestamp and
+ * the same compression settings are always used. Packs with identical contents are
+ * therefore written as byte-identical zip files with identical hashes, which lets
+ * clients reuse their cached download of the pack after a restart.
+ * <p>
+ * Files in packs stored in memory that were read from a zip file, for example using
+ * {@link ca.bkaw.praeter.core.resources.pack.ResourcePack#readZipIntoMemory}, and
+ * that have not been modified are written with the compressed bytes they were read
+ * with, without being decompressed and compressed again.
+ * <p>
+ * Other files are compressed according to the {@link CompressionPolicy}. Statistics
+ * about the last written pack are available from {@link #getLastReport()}.
+ */
+public class PackZipWriter {
+    /**
+     * The timestamp used for all entries.
+     */
+    public static final LocalDateTime ENTRY_TIME = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private final CompressionPolicy compressionPolicy;
+    private final int threads;
+    private PackWriteReport lastReport;
+
+    /**
+     * Create a new {@link PackZipWriter} that uses the
+     * {@link CompressionPolicy#DEFAULT default compression policy} and compresses on
+     * all available processors.
+     */
+    public PackZipWriter() {
+        this(CompressionPolicy.DEFAULT);
+    }
+
+    /**
+     * Create a new {@link PackZipWriter} that compresses on all available processors.
+     *
+     * @param compressionPolicy The policy that decides how entries are compressed.
+     */
+    public PackZipWriter(CompressionPolicy compressionPolicy) {
+        this(compressionPolicy, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new {@link PackZipWriter}.
+     *
+     * @param compressionPolicy The policy that decides how entries are compressed.
+     * @param threads The amount of threads to compress entries on. When 1, entries
+     *                are compressed on the calling thread.
+     */
+    public PackZipWriter(CompressionPolicy compressionPolicy, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+        this.compressionPolicy = compressionPolicy;
+        this.threads = threads;
+    }
+
+    /**
+     * Get statistics about the pack that was last written by this writer.
+     *
+     * @return The report, or null if no pack has been written.
+     */
+    @Nullable
+    public PackWriteReport getLastReport() {
+        return this.lastReport;
+    }
+
+    /**
+     * Write the files in the pack to a zip file.
+     * <p>
+     * The zip is first written to a temporary file next to the target that then
+     * replaces the target, so the previous file stays intact if writing fails. The
+     * temporary file is deleted if writing fails. The pack is
+     * {@link Pack#flush() flushed} before it is written.
+     * <p>
+     * Entries are compressed in parallel, a limited amount of entries ahead of the
+     * entry being written, and are written in order. The pack must not be modified
+     * while it is being written.
+     *
+     * @param pack The pack to write.
+     * @param zipFile The path of the zip file to write to.
+     * @return The written file, including its hash which is computed while writing.
+     * @throws IOException If an I/O error occurs.
+     */
+    public BakedPackFile write(Pack pack, Path zipFile) throws IOException {
+        long start = System.nanoTime();
+        pack.flush();
+        List<String> paths = listFiles(pack);
+
+        Path tempFile = zipFile.resolveSibling(zipFile.getFileName() + ".tmp");
+        MessageDigest digest = BakedPackFile.newSha1Digest();
+        long size;
+        ReportBuilder report = new ReportBuilder();
+        ExecutorService executor = this.threads > 1 ? createExecutor(this.threads) : null;
+        try {
+            try (CountingOutputStream counter = new CountingOutputStream(
+                     new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)), digest));
+                 ZipWriter zip = new ZipWriter(counter, ENTRY_TIME)) {
+                if (executor == null) {
+                    for (String path : paths) {
+                        PreparedEntry entry = this.createEntry(pack, path);
+                        report.add(entry);
+                        zip.writeEntry(path, entry.entry());
+                    }
+                } else {
+                    // Limit how many compressed entries are kept in memory while waiting
+                    int window = this.threads * 4;
+                    Deque<Future<PreparedEntry>> pending = new ArrayDeque<>(window);
+                    int submitted = 0;
+                    for (String path : paths) {
+                        while (submitted < paths.size() && pending.size() < window) {
+                            String next = paths.get(submitted++);
+                            pending.add(executor.submit(() -> this.createEntry(pack, next)));
+                        }
+                        PreparedEntry entry = await(pending.remove());
+                        report.add(entry);
+                        zip.writeEntry(path, entry.entry());
+                    }
+                }
+                zip.finish();
+                counter.flush();
+                size = counter.count;
+            } finally {
+                if (executor != null) {
+                    executor.shutdownNow();
+                }
+            }
+
+            try {
+                Files.move(tempFile, zipFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, zipFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Do not leave a partially written file behind
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        this.lastReport = report.build(size, System.nanoTime() - start);
+        return new BakedPackFile(zipFile, size, digest.digest());
+    }
+
+    /**
+     * Create the zip entry of a file in the pack, compressing it if necessary.
+     * <p>
+     * Raw entries are copied as they are, unless the compression policy says that
+     * the file should be stored and the raw entry is compressed. The raw entry is
+     * then decompressed, but compressed entries are never compressed again.
+     *
+     * @param pack The pack.
+     * @param path The path of the file relative to the root of the pack.
+     * @return The entry.
+     * @throws IOException If an I/O error occurs.
+     */
+    private PreparedEntry createEntry(Pack pack, String path) throws IOException {
+        Path file = pack.getPath(path);
+        if (file.getFileSystem() instanceof MemoryFileSystem memoryFileSystem) {
+            RawZipEntry entry = memoryFileSystem.getRawEntry(file);
+            if (entry != null && (entry.method() == RawZipEntry.STORED || !this.compressionPolicy.shouldStore(path))) {
+                return new PreparedEntry(entry, true);
+            }
+        }
+        return new PreparedEntry(this.compressionPolicy.compress(path, Files.readAllBytes(file)), false);
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Praeter Pack Compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Wait for an entry to be compressed.
+     *
+     * @param future The future of the entry.
+     * @return The entry.
+     * @throws IOException If the entry could not be created.
+     */
+    private static PreparedEntry await(Future<PreparedEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing the pack.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Failed to compress a pack entry.", e.getCause());
+        }
+    }
+
+    /**
+     * List the paths of all files in the pack, relative to the root of the pack and
+     * sorted.
+     *
+     * @param pack The pack.
+     * @return The sorted list of paths.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static List<String> listFiles(Pack pack) throws IOException {
+        Path root = pack.getRoot();
+        String separator = root.getFileSystem().getSeparator();
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream
+                .filter(Files::isRegularFile)
+                .map(path -> root.relativize(path).toString().replace(separator, "/"))
+                .sorted()
+                .toList();
+        }
+    }
+
+    /**
+     * An entry that is ready to be written.
+     *
+     * @param entry The raw entry.
+     * @param copied Whether the entry was copied as it was already compressed.
+     */
+    private record PreparedEntry(RawZipEntry entry, boolean copied) {}
+
+    /**
+     * Collects the statistics for a {@link PackWriteReport}.
+     */
+    private static class ReportBuilder {
+        private int storedEntries;
+        private long storedSize;
+        private int deflatedEntries;
+        private long deflatedSize;
+        private long deflatedCompressedSize;
+        private int copiedEntries;
+        private long copiedSize;
+        private long copiedCompressedSize;
+
+        private void add(PreparedEntry prepared) {
+            RawZipEntry entry = prepared.entry();
+            if (prepared.copied()) {
+                this.copiedEntries++;
+                this.copiedSize += entry.size();
+                this.copiedCompressedSize += entry.compressedSize();
+            } else if (entry.method() == RawZipEntry.STORED) {
+                this.storedEntries++;
+                this.storedSize += entry.size();
+            } else {
+                this.deflatedEntries++;
+                this.deflatedSize += entry.size();
+                this.deflatedCompressedSize += entry.compressedSize();
+            }
+        }
+
+        private PackWriteReport build(long fileSize, long nanos) {
+            return new PackWriteReport(this.storedEntries, this.storedSize,
+                this.deflatedEntries, this.deflatedSize, this.deflatedCompressedSize,
+                this.copiedEntries, this.copiedSize, this.copiedCompressedSize,
+                fileSize, nanos);
+        }
+    }
+
+    /**
+     * An output stream that counts the amount of bytes written.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+    }
+}
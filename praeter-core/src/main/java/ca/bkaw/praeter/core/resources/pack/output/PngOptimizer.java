@@ -0,0 +1,585 @@
+package ca.bkaw.praeter.core.resources.pack.output;
+
+import ca.bkaw.praeter.core.resources.pack.Pack;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Re-encodes the PNG files in a pack losslessly to make them smaller.
+ * <p>
+ * The pixels of each image are kept exactly, but the image is written using a
+ * palette when it has at most 256 colors, or as grayscale when all pixels are gray.
+ * Ancillary chunks are dropped, and the filter and deflate strategy that give the
+ * smallest file are chosen per image. Images are only replaced when the result is
+ * smaller than the original.
+ * <p>
+ * Images with 16 bits per sample and animated images are left untouched.
+ * <p>
+ * The results are remembered by the contents of the original image, so when the
+ * same optimizer is used for multiple packs, images that exist in more than one of
+ * the packs are only optimized once.
+ */
+public class PngOptimizer {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int COLOR_TYPE_GRAY = 0;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_PALETTE = 3;
+    private static final int COLOR_TYPE_GRAY_ALPHA = 4;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int ADAPTIVE_FILTER = 5;
+    /**
+     * Images with more pixels than this only try the adaptive filter, as trying all
+     * combinations would take too long.
+     */
+    private static final int EXHAUSTIVE_PIXEL_LIMIT = 512 * 512;
+
+    private final int threads;
+    /**
+     * The optimized images by the hash of the original image. Images that could not
+     * be made smaller map to an empty array.
+     */
+    private final Map<HashCode, byte[]> results = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new {@link PngOptimizer} that optimizes images on all available
+     * processors.
+     */
+    public PngOptimizer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new {@link PngOptimizer}.
+     *
+     * @param threads The amount of threads to optimize images on.
+     */
+    public PngOptimizer(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Optimize all PNG files in the pack.
+     * <p>
+     * Images are optimized in parallel, and the optimized images are written to the
+     * pack on the calling thread. The pack must not be modified by other threads
+     * while it is being optimized.
+     *
+     * @param pack The pack.
+     * @return The result.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Result optimize(Pack pack) throws IOException {
+        long start = System.nanoTime();
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(pack.getRoot())) {
+            paths = stream
+                .filter(path -> path.toString().endsWith(".png"))
+                .filter(Files::isRegularFile)
+                .toList();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "Praeter PNG Optimizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int optimized = 0;
+        long savedBytes = 0;
+        try {
+            List<Future<Optimized>> futures = new ArrayList<>(paths.size());
+            for (Path path : paths) {
+                futures.add(executor.submit(() -> {
+                    byte[] original = Files.readAllBytes(path);
+                    return new Optimized(original.length, this.optimizeCached(original));
+                }));
+            }
+            for (int i = 0; i < paths.size(); i++) {
+                Optimized result;
+                try {
+                    result = futures.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while optimizing images.");
+                } catch (ExecutionException e) {
+                    throw new IOException("Failed to optimize " + paths.get(i), e.getCause());
+                }
+                if (result.optimized() != null) {
+                    Files.write(paths.get(i), result.optimized());
+                    optimized++;
+                    savedBytes += result.originalSize() - result.optimized().length;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Result(paths.size(), optimized, savedBytes, System.nanoTime() - start);
+    }
+
+    @Nullable
+    private byte[] optimizeCached(byte[] original) {
+        HashCode hash = Hashing.sha256().hashBytes(original);
+        byte[] optimized = this.results.get(hash);
+        if (optimized == null) {
+            optimized = optimize(original);
+            if (optimized == null) {
+                optimized = new byte[0];
+            }
+            this.results.put(hash, optimized);
+        }
+        return optimized.length == 0 ? null : optimized;
+    }
+
+    /**
+     * Optimize a PNG image.
+     *
+     * @param png The bytes of the PNG file.
+     * @return The bytes of the optimized PNG file, or null if the image could not be
+     * made smaller or is not supported.
+     */
+    @Nullable
+    public static byte[] optimize(byte[] png) {
+        Header header;
+        int[] pixels;
+        try {
+            header = Header.read(png);
+            if (header == null || header.bitDepth() > 8 || header.animated()) {
+                return null;
+            }
+            pixels = readPixels(png, header);
+        } catch (IOException | RuntimeException e) {
+            // Not an image we can read, leave it as is
+            return null;
+        }
+        if (pixels == null) {
+            return null;
+        }
+
+        byte[] best = null;
+        for (byte[] candidate : encode(pixels, header.width(), header.height())) {
+            if (best == null || candidate.length < best.length) {
+                best = candidate;
+            }
+        }
+        return best != null && best.length < png.length ? best : null;
+    }
+
+    /**
+     * Read the pixels of an image as non-premultiplied ARGB.
+     *
+     * @param png The bytes of the PNG file.
+     * @param header The header of the image.
+     * @return The pixels, or null if the image can not be read exactly.
+     * @throws IOException If the image is invalid.
+     */
+    @Nullable
+    private static int[] readPixels(byte[] png, Header header) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        if (image == null || image.getWidth() != header.width() || image.getHeight() != header.height()) {
+            return null;
+        }
+        int width = header.width();
+        int height = header.height();
+        int[] pixels = new int[width * height];
+
+        if (header.colorType() == COLOR_TYPE_GRAY || header.colorType() == COLOR_TYPE_GRAY_ALPHA) {
+            // Converting gray images to RGB applies a color space conversion, so the
+            // samples are read directly instead
+            if (header.transparency()) {
+                return null;
+            }
+            Raster raster = image.getRaster();
+            boolean alpha = header.colorType() == COLOR_TYPE_GRAY_ALPHA;
+            if (raster.getNumBands() != (alpha ? 2 : 1)) {
+                return null;
+            }
+            int max = (1 << header.bitDepth()) - 1;
+            int[] samples = new int[raster.getNumBands()];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    raster.getPixel(x, y, samples);
+                    int gray = samples[0] * 255 / max;
+                    int a = alpha ? samples[1] : 255;
+                    pixels[y * width + x] = (a << 24) | (gray << 16) | (gray << 8) | gray;
+                }
+            }
+        } else {
+            image.getRGB(0, 0, width, height, pixels, 0, width);
+        }
+        return pixels;
+    }
+
+    /**
+     * Encode the pixels in all color types that can represent them exactly.
+     *
+     * @param pixels The ARGB pixels.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The encoded PNG files.
+     */
+    private static List<byte[]> encode(int[] pixels, int width, int height) {
+        boolean alpha = false;
+        boolean gray = true;
+        IntSet colors = new IntOpenHashSet();
+        for (int pixel : pixels) {
+            alpha |= (pixel >>> 24) != 255;
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            gray &= r == g && g == b;
+            if (colors.size() <= 256) {
+                colors.add(pixel);
+            }
+        }
+
+        List<byte[]> encoded = new ArrayList<>(2);
+        if (colors.size() <= 256) {
+            encoded.add(encodePalette(pixels, width, height, colors.toIntArray()));
+        }
+        int colorType = gray
+            ? (alpha ? COLOR_TYPE_GRAY_ALPHA : COLOR_TYPE_GRAY)
+            : (alpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB);
+        int channels = switch (colorType) {
+            case COLOR_TYPE_GRAY -> 1;
+            case COLOR_TYPE_GRAY_ALPHA -> 2;
+            case COLOR_TYPE_RGB -> 3;
+            default -> 4;
+        };
+        int stride = width * channels;
+        byte[] raw = new byte[stride * height];
+        int i = 0;
+        for (int pixel : pixels) {
+            int a = pixel >>> 24;
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            switch (colorType) {
+                case COLOR_TYPE_GRAY -> raw[i++] = (byte) r;
+                case COLOR_TYPE_GRAY_ALPHA -> {
+                    raw[i++] = (byte) r;
+                    raw[i++] = (byte) a;
+                }
+                case COLOR_TYPE_RGB -> {
+                    raw[i++] = (byte) r;
+                    raw[i++] = (byte) g;
+                    raw[i++] = (byte) b;
+                }
+                default -> {
+                    raw[i++] = (byte) r;
+                    raw[i++] = (byte) g;
+                    raw[i++] = (byte) b;
+                    raw[i++] = (byte) a;
+                }
+            }
+        }
+        byte[] idat = compress(raw, width, height, stride, channels);
+        encoded.add(writePng(width, height, 8, colorType, null, null, idat));
+        return encoded;
+    }
+
+    private static byte[] encodePalette(int[] pixels, int width, int height, int[] colors) {
+        // Sort transparent colors first so that the tRNS chunk can be cut short
+        IntArrays.quickSort(colors, (a, b) -> {
+            int compare = Integer.compare(a >>> 24, b >>> 24);
+            return compare != 0 ? compare : Integer.compareUnsigned(a, b);
+        });
+        Int2IntMap indexes = new Int2IntOpenHashMap(colors.length);
+        byte[] palette = new byte[colors.length * 3];
+        int transparentCount = 0;
+        for (int i = 0; i < colors.length; i++) {
+            int color = colors[i];
+            indexes.put(color, i);
+            palette[i * 3] = (byte) (color >> 16);
+            palette[i * 3 + 1] = (byte) (color >> 8);
+            palette[i * 3 + 2] = (byte) color;
+            if ((color >>> 24) != 255) {
+                transparentCount = i + 1;
+            }
+        }
+        byte[] transparency = null;
+        if (transparentCount > 0) {
+            transparency = new byte[transparentCount];
+            for (int i = 0; i < transparentCount; i++) {
+                transparency[i] = (byte) (colors[i] >>> 24);
+            }
+        }
+
+        int bitDepth = colors.length <= 2 ? 1 : colors.length <= 4 ? 2 : colors.length <= 16 ? 4 : 8;
+        int pixelsPerByte = 8 / bitDepth;
+        int stride = (width + pixelsPerByte - 1) / pixelsPerByte;
+        byte[] raw = new byte[stride * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int index = indexes.get(pixels[y * width + x]);
+                int shift = 8 - bitDepth * (x % pixelsPerByte + 1);
+                raw[y * stride + x / pixelsPerByte] |= (byte) (index << shift);
+            }
+        }
+        byte[] idat = compress(raw, width, height, stride, 1);
+        return writePng(width, height, bitDepth, COLOR_TYPE_PALETTE, palette, transparency, idat);
+    }
+
+    /**
+     * Filter and deflate the image data, trying filters and deflate strategies and
+     * using the smallest result.
+     *
+     * @param raw The unfiltered scanlines.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param stride The amount of bytes per scanline.
+     * @param bytesPerPixel The amount of bytes per pixel, at least 1.
+     * @return The compressed data.
+     */
+    private static byte[] compress(byte[] raw, int width, int height, int stride, int bytesPerPixel) {
+        boolean exhaustive = (long) width * height <= EXHAUSTIVE_PIXEL_LIMIT;
+        byte[] best = null;
+        for (int filter = exhaustive ? 0 : ADAPTIVE_FILTER; filter <= ADAPTIVE_FILTER; filter++) {
+            byte[] filtered = filter(raw, height, stride, bytesPerPixel, filter);
+            for (int strategy : exhaustive
+                ? new int[] {Deflater.DEFAULT_STRATEGY, Deflater.FILTERED}
+                : new int[] {Deflater.DEFAULT_STRATEGY}) {
+                byte[] compressed = deflate(filtered, strategy);
+                if (best == null || compressed.length < best.length) {
+                    best = compressed;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Apply a PNG filter to all scanlines.
+     *
+     * @param raw The unfiltered scanlines.
+     * @param height The amount of scanlines.
+     * @param stride The amount of bytes per scanline.
+     * @param bytesPerPixel The amount of bytes per pixel, at least 1.
+     * @param filter The filter type 0-4, or {@link #ADAPTIVE_FILTER} to choose the
+     *               filter per scanline.
+     * @return The filtered scanlines, each starting with the filter type.
+     */
+    private static byte[] filter(byte[] raw, int height, int stride, int bytesPerPixel, int filter) {
+        byte[] filtered = new byte[(stride + 1) * height];
+        byte[] candidate = filter == ADAPTIVE_FILTER ? new byte[stride] : null;
+        for (int y = 0; y < height; y++) {
+            int row = y * stride;
+            int prior = row - stride;
+            int out = y * (stride + 1);
+            if (filter != ADAPTIVE_FILTER) {
+                filtered[out] = (byte) filter;
+                filterRow(raw, row, y == 0 ? -1 : prior, stride, bytesPerPixel, filter, filtered, out + 1);
+                continue;
+            }
+            // Use the filter with the lowest sum of absolute differences
+            long bestSum = Long.MAX_VALUE;
+            for (int type = 0; type < ADAPTIVE_FILTER; type++) {
+                filterRow(raw, row, y == 0 ? -1 : prior, stride, bytesPerPixel, type, candidate, 0);
+                long sum = 0;
+                for (byte b : candidate) {
+                    sum += Math.abs(b);
+                }
+                if (sum < bestSum) {
+                    bestSum = sum;
+                    filtered[out] = (byte) type;
+                    System.arraycopy(candidate, 0, filtered, out + 1, stride);
+                }
+            }
+        }
+        return filtered;
+    }
+
+    private static void filterRow(byte[] raw, int row, int prior, int stride, int bytesPerPixel,
+                                  int type, byte[] out, int outOffset) {
+        for (int i = 0; i < stride; i++) {
+            int x = raw[row + i] & 0xFF;
+            int a = i >= bytesPerPixel ? raw[row + i - bytesPerPixel] & 0xFF : 0;
+            int b = prior >= 0 ? raw[prior + i] & 0xFF : 0;
+            int c = prior >= 0 && i >= bytesPerPixel ? raw[prior + i - bytesPerPixel] & 0xFF : 0;
+            int value = switch (type) {
+                case 0 -> x;
+                case 1 -> x - a;
+                case 2 -> x - b;
+                case 3 -> x - ((a + b) >> 1);
+                default -> x - paeth(a, b, c);
+            };
+            out[outOffset + i] = (byte) value;
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private static byte[] deflate(byte[] data, int strategy) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setStrategy(strategy);
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] writePng(int width, int height, int bitDepth, int colorType,
+                                   @Nullable byte[] palette, @Nullable byte[] transparency, byte[] idat) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(idat.length + 128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(SIGNATURE);
+
+            ByteBuffer ihdr = ByteBuffer.allocate(13);
+            ihdr.putInt(width);
+            ihdr.putInt(height);
+            ihdr.put((byte) bitDepth);
+            ihdr.put((byte) colorType);
+            ihdr.put((byte) 0); // compression method
+            ihdr.put((byte) 0); // filter method
+            ihdr.put((byte) 0); // no interlacing
+            writeChunk(out, "IHDR", ihdr.array());
+            if (palette != null) {
+                writeChunk(out, "PLTE", palette);
+            }
+            if (transparency != null) {
+                writeChunk(out, "tRNS", transparency);
+            }
+            writeChunk(out, "IDAT", idat);
+            writeChunk(out, "IEND", new byte[0]);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Not thrown when writing to a byte array
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * The result of optimizing the images in a pack.
+     *
+     * @param images The amount of PNG images in the pack.
+     * @param optimized The amount of images that were made smaller.
+     * @param savedBytes The total amount of bytes saved.
+     * @param nanos The time it took to optimize the images, in nanoseconds.
+     */
+    public record Result(int images, int optimized, long savedBytes, long nanos) {}
+
+    /**
+     * An image after being optimized.
+     *
+     * @param originalSize The size of the original file.
+     * @param optimized The optimized file, or null if it could not be optimized.
+     */
+    private record Optimized(int originalSize, @Nullable byte[] optimized) {}
+
+    /**
+     * The information about a PNG image that is needed to read it exactly.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param bitDepth The bit depth.
+     * @param colorType The color type.
+     * @param transparency Whether the image has a tRNS chunk.
+     * @param animated Whether the image is an animated PNG.
+     */
+    private record Header(int width, int height, int bitDepth, int colorType,
+                          boolean transparency, boolean animated) {
+        @Nullable
+        private static Header read(byte[] png) {
+            if (png.length < 33) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(png);
+            for (int i = 0; i < SIGNATURE.length; i++) {
+                if (png[i] != SIGNATURE[i]) {
+                    return null;
+                }
+            }
+            if (buffer.getInt(8) != 13 || buffer.getInt(12) != 0x49484452) { // IHDR
+                return null;
+            }
+            int width = buffer.getInt(16);
+            int height = buffer.getInt(20);
+            int bitDepth = png[24] & 0xFF;
+            int colorType = png[25] & 0xFF;
+            if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE / 4) {
+                return null;
+            }
+
+            boolean transparency = false;
+            boolean animated = false;
+            // A long, so that a bogus chunk length can not overflow the position
+            long position = 8;
+            while (position + 8 <= png.length) {
+                int length = buffer.getInt((int) position);
+                int type = buffer.getInt((int) position + 4);
+                if (length < 0 || position + 12 + length > png.length) {
+                    // The chunk does not fit in the file
+                    return null;
+                }
+                if (type == 0x74524e53) { // tRNS
+                    transparency = true;
+                } else if (type == 0x6163544c) { // acTL
+                    animated = true;
+                }
+                position += 12 + length;
+            }
+            return new Header(width, height, bitDepth, colorType, transparency, animated);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ca.bkaw.praeter.core.resources.pack.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * The contents of a zip entry as they are stored in the zip file.
+ * <p>
+ * Raw entries can be copied from one zip file to another without decompressing
+ * and compressing the contents again. The data array must not be modified.
+ *
+ * @param method The compression method, {@link #STORED} or {@link #DEFLATED}.
+ * @param crc The CRC-32 of the uncompressed contents.
+ * @param size The size of the uncompressed contents.
+ * @param data The stored, possibly compressed, contents.
+ */
+public record RawZipEntry(int method, long crc, long size, byte[] data) {
+    /**
+     * The compression method for entries that are not compressed.
+     */
+    public static final int STORED = 0;
+
+    /**
+     * The compression method for entries that are compressed using deflate.
+     */
+    public static final int DEFLATED = 8;
+
+    /**
+     * Create a raw entry that stores the contents without compressing them.
+     *
+     * @param contents The contents. Must not be modified after this call.
+     * @return The raw entry.
+     */
+    public static RawZipEntry store(byte[] contents) {
+        return new RawZipEntry(STORED, crc(contents), contents.length, contents);
+    }
+
+    /**
+     * Create a raw entry by compressing the contents using deflate.
+     *
+     * @param contents The contents.
+     * @param level The deflate compression level to use, 0-9 or
+     *              {@link Deflater#DEFAULT_COMPRESSION}.
+     * @return The raw entry.
+     */
+    public static RawZipEntry deflate(byte[] contents, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(contents);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, contents.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return new RawZipEntry(DEFLATED, crc(contents), contents.length, out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static long crc(byte[] contents) {
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        return crc.getValue();
+    }
+
+    /**
+     * Get the size of the stored, possibly compressed, contents.
+     *
+     * @return The compressed size.
+     */
+    public long compressedSize() {
+        return this.data.length;
+    }
+
+    /**
+     * Get the uncompressed contents of the entry.
+     * <p>
+     * For stored entries the data array is returned as is.
+     *
+     * @return The contents. Must not be modified.
+     * @throws ZipException If the entry is corrupt or uses an unsupported method.
+     */
+    public byte[] decompress() throws ZipException {
+        if (this.size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Zip entry is too large to decompress: " + this.size + " bytes");
+        }
+        byte[] contents;
+        switch (this.method) {
+            case STORED -> contents = this.data;
+            case DEFLATED -> {
+                contents = new byte[(int) this.size];
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(this.data);
+                    int offset = 0;
+                    while (offset < contents.length) {
+                        int length = inflater.inflate(contents, offset, contents.length - offset);
+                        if (length == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new ZipException("Zip entry is shorter than its size.");
+                        }
+                        offset += length;
+                    }
+                } catch (DataFormatException e) {
+                    throw new ZipException("Invalid deflate data: " + e.getMessage());
+                } finally {
+                    inflater.end();
+                }
+            }
+            default -> throw new ZipException("Unsupported compression method " + this.method);
+        }
+        if (contents.length != this.size || crc(contents) != this.crc) {
+            throw new ZipException("Zip entry does not match its size or CRC.");
+        }
+        return contents;
+    }
+}
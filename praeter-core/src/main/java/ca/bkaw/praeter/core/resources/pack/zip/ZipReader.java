@@ -0,0 +1,206 @@
+package ca.bkaw.praeter.core.resources.pack.zip;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the raw entries of a zip file.
+ * <p>
+ * Only the central directory and the selected entries are read, and the entries are
+ * not decompressed. Entries in a jar file that are not needed, like class files,
+ * are therefore never touched.
+ */
+public final class ZipReader {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private ZipReader() {}
+
+    /**
+     * Read the raw entries of a zip file.
+     * <p>
+     * Directory entries are not included, use the names of the files to find the
+     * directories.
+     *
+     * @param zipFile The path of the zip file.
+     * @param filter Determines which entries to read by their name, or null to read
+     *               all entries.
+     * @return A map from entry name to entry, in the order of the central directory.
+     * @throws ZipException If the zip file is invalid or uses unsupported features.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static Map<String, RawZipEntry> read(Path zipFile, @Nullable Predicate<String> filter) throws IOException {
+        try (FileChannel channel = FileChannel.open(zipFile, StandardOpenOption.READ)) {
+            List<CentralEntry> centralEntries = readCentralDirectory(channel, filter);
+
+            // Read the entries in file order to avoid seeking back and forth
+            List<CentralEntry> byOffset = new ArrayList<>(centralEntries);
+            byOffset.sort(Comparator.comparingLong(CentralEntry::localHeaderOffset));
+            Map<CentralEntry, RawZipEntry> entries = new LinkedHashMap<>();
+            for (CentralEntry entry : byOffset) {
+                entries.put(entry, readEntry(channel, entry));
+            }
+
+            Map<String, RawZipEntry> result = new LinkedHashMap<>();
+            for (CentralEntry entry : centralEntries) {
+                result.put(entry.name(), entries.get(entry));
+            }
+            return result;
+        }
+    }
+
+    private static List<CentralEntry> readCentralDirectory(FileChannel channel,
+                                                           @Nullable Predicate<String> filter) throws IOException {
+        long fileSize = channel.size();
+
+        // Find the end of central directory record, which is followed by a comment
+        int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new ZipException("Not a zip file, no end of central directory found.");
+        }
+        long entryCount = Short.toUnsignedLong(tail.getShort(end + 10));
+        long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+
+        if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            // The real values are in the zip64 end of central directory record
+            long endPosition = fileSize - tailSize + end;
+            if (endPosition < 20) {
+                throw new ZipException("Missing zip64 end of central directory locator.");
+            }
+            ByteBuffer locator = read(channel, endPosition - 20, 20);
+            if (locator.getInt(0) != ZIP64_LOCATOR) {
+                throw new ZipException("Missing zip64 end of central directory locator.");
+            }
+            ByteBuffer zip64End = read(channel, locator.getLong(8), 56);
+            if (zip64End.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                throw new ZipException("Invalid zip64 end of central directory.");
+            }
+            entryCount = zip64End.getLong(32);
+            directorySize = zip64End.getLong(40);
+            directoryOffset = zip64End.getLong(48);
+        }
+        if (directorySize > Integer.MAX_VALUE || directoryOffset + directorySize > fileSize) {
+            throw new ZipException("Invalid central directory.");
+        }
+
+        ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+        List<CentralEntry> entries = new ArrayList<>();
+        int position = 0;
+        for (long i = 0; i < entryCount; i++) {
+            if (directory.getInt(position) != CENTRAL_HEADER) {
+                throw new ZipException("Invalid central directory entry.");
+            }
+            int flags = Short.toUnsignedInt(directory.getShort(position + 8));
+            int method = Short.toUnsignedInt(directory.getShort(position + 10));
+            long crc = Integer.toUnsignedLong(directory.getInt(position + 16));
+            long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+            long size = Integer.toUnsignedLong(directory.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.get(position + 46, nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // Sizes and offsets that do not fit are stored in the zip64 extra field
+            int extra = position + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = Short.toUnsignedInt(directory.getShort(extra));
+                int length = Short.toUnsignedInt(directory.getShort(extra + 2));
+                if (id == ZIP64_EXTRA) {
+                    int field = extra + 4;
+                    if (size == 0xFFFFFFFFL) {
+                        size = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == 0xFFFFFFFFL) {
+                        localHeaderOffset = directory.getLong(field);
+                    }
+                }
+                extra += 4 + length;
+            }
+            position = extraEnd + commentLength;
+
+            if (name.endsWith("/") || (filter != null && !filter.test(name))) {
+                continue;
+            }
+            if ((flags & 1) != 0) {
+                throw new ZipException("Encrypted zip entries are not supported: " + name);
+            }
+            if (method != RawZipEntry.STORED && method != RawZipEntry.DEFLATED) {
+                throw new ZipException("Unsupported compression method " + method + " for " + name);
+            }
+            if (compressedSize > Integer.MAX_VALUE) {
+                throw new ZipException("Zip entry is too large: " + name);
+            }
+            entries.add(new CentralEntry(name, method, crc, compressedSize, size, localHeaderOffset));
+        }
+        return entries;
+    }
+
+    private static RawZipEntry readEntry(FileChannel channel, CentralEntry entry) throws IOException {
+        ByteBuffer header = read(channel, entry.localHeaderOffset(), 30);
+        if (header.getInt(0) != LOCAL_HEADER) {
+            throw new ZipException("Invalid local header for " + entry.name());
+        }
+        int nameLength = Short.toUnsignedInt(header.getShort(26));
+        int extraLength = Short.toUnsignedInt(header.getShort(28));
+        long dataOffset = entry.localHeaderOffset() + 30 + nameLength + extraLength;
+        ByteBuffer data = read(channel, dataOffset, (int) entry.compressedSize());
+        return new RawZipEntry(entry.method(), entry.crc(), entry.size(), data.array());
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of zip file.");
+            }
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * An entry in the central directory.
+     */
+    private record CentralEntry(String name, int method, long crc, long compressedSize,
+                                long size, long localHeaderOffset) {}
+}
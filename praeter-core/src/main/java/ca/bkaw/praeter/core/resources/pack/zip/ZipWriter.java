@@ -0,0 +1,212 @@
+package ca.bkaw.praeter.core.resources.pack.zip;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes raw entries to a zip file.
+ * <p>
+ * Unlike {@link java.util.zip.ZipOutputStream}, entries are written as they are
+ * stored, so entries that are already compressed, for example entries read using
+ * {@link ZipReader}, are not compressed again. Zip64 records are written when the
+ * sizes or offsets require them.
+ */
+public class ZipWriter implements Closeable {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private final OutputStream out;
+    private final int dosTime;
+    private final int dosDate;
+    private final List<CentralEntry> entries = new ArrayList<>();
+    private long offset;
+    private boolean finished;
+
+    /**
+     * Create a new {@link ZipWriter}.
+     *
+     * @param out The output stream to write the zip file to. Should be buffered.
+     * @param time The modification time to use for all entries.
+     */
+    public ZipWriter(OutputStream out, LocalDateTime time) {
+        this.out = out;
+        this.dosTime = (time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() >> 1);
+        this.dosDate = ((time.getYear() - 1980) << 9) | (time.getMonthValue() << 5) | time.getDayOfMonth();
+    }
+
+    /**
+     * Write an entry.
+     *
+     * @param name The name of the entry, using {@code /} as the separator.
+     * @param entry The raw entry to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeEntry(String name, RawZipEntry entry) throws IOException {
+        if (this.finished) {
+            throw new IllegalStateException("The zip file has already been finished.");
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int flags = nameBytes.length != name.length() ? UTF8_FLAG : 0;
+        boolean zip64 = entry.size() >= ZIP64_MAGIC || entry.compressedSize() >= ZIP64_MAGIC;
+
+        ByteBuffer header = buffer(30 + nameBytes.length + (zip64 ? 20 : 0));
+        header.putInt(LOCAL_HEADER);
+        header.putShort((short) (zip64 ? ZIP64_VERSION : VERSION));
+        header.putShort((short) flags);
+        header.putShort((short) entry.method());
+        header.putShort((short) this.dosTime);
+        header.putShort((short) this.dosDate);
+        header.putInt((int) entry.crc());
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.compressedSize()));
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.size()));
+        header.putShort((short) nameBytes.length);
+        header.putShort((short) (zip64 ? 20 : 0));
+        header.put(nameBytes);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA);
+            header.putShort((short) 16);
+            header.putLong(entry.size());
+            header.putLong(entry.compressedSize());
+        }
+
+        long localHeaderOffset = this.offset;
+        this.write(header);
+        this.out.write(entry.data());
+        this.offset += entry.data().length;
+        this.entries.add(new CentralEntry(nameBytes, flags, entry.method(), entry.crc(),
+            entry.compressedSize(), entry.size(), localHeaderOffset));
+    }
+
+    /**
+     * Write the central directory. No more entries can be written after this.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void finish() throws IOException {
+        if (this.finished) {
+            return;
+        }
+        this.finished = true;
+
+        long directoryOffset = this.offset;
+        for (CentralEntry entry : this.entries) {
+            boolean zip64Size = entry.size() >= ZIP64_MAGIC || entry.compressedSize() >= ZIP64_MAGIC;
+            boolean zip64Offset = entry.localHeaderOffset() >= ZIP64_MAGIC;
+            int extraLength = zip64Size || zip64Offset
+                ? 4 + (zip64Size ? 16 : 0) + (zip64Offset ? 8 : 0)
+                : 0;
+            int version = extraLength != 0 ? ZIP64_VERSION : VERSION;
+
+            ByteBuffer header = buffer(46 + entry.name().length + extraLength);
+            header.putInt(CENTRAL_HEADER);
+            header.putShort((short) version);
+            header.putShort((short) version);
+            header.putShort((short) entry.flags());
+            header.putShort((short) entry.method());
+            header.putShort((short) this.dosTime);
+            header.putShort((short) this.dosDate);
+            header.putInt((int) entry.crc());
+            header.putInt((int) (zip64Size ? ZIP64_MAGIC : entry.compressedSize()));
+            header.putInt((int) (zip64Size ? ZIP64_MAGIC : entry.size()));
+            header.putShort((short) entry.name().length);
+            header.putShort((short) extraLength);
+            header.putShort((short) 0); // comment length
+            header.putShort((short) 0); // disk number
+            header.putShort((short) 0); // internal attributes
+            header.putInt(0); // external attributes
+            header.putInt((int) (zip64Offset ? ZIP64_MAGIC : entry.localHeaderOffset()));
+            header.put(entry.name());
+            if (extraLength != 0) {
+                header.putShort((short) ZIP64_EXTRA);
+                header.putShort((short) (extraLength - 4));
+                if (zip64Size) {
+                    header.putLong(entry.size());
+                    header.putLong(entry.compressedSize());
+                }
+                if (zip64Offset) {
+                    header.putLong(entry.localHeaderOffset());
+                }
+            }
+            this.write(header);
+        }
+        long directorySize = this.offset - directoryOffset;
+        int count = this.entries.size();
+
+        boolean zip64 = count >= 0xFFFF || directoryOffset >= ZIP64_MAGIC || directorySize >= ZIP64_MAGIC;
+        if (zip64) {
+            long zip64EndOffset = this.offset;
+            ByteBuffer zip64End = buffer(56 + 20);
+            zip64End.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY);
+            zip64End.putLong(44); // size of the remaining record
+            zip64End.putShort((short) ZIP64_VERSION);
+            zip64End.putShort((short) ZIP64_VERSION);
+            zip64End.putInt(0); // disk number
+            zip64End.putInt(0); // disk with the central directory
+            zip64End.putLong(count);
+            zip64End.putLong(count);
+            zip64End.putLong(directorySize);
+            zip64End.putLong(directoryOffset);
+
+            zip64End.putInt(ZIP64_LOCATOR);
+            zip64End.putInt(0); // disk with the zip64 end of central directory
+            zip64End.putLong(zip64EndOffset);
+            zip64End.putInt(1); // total number of disks
+            this.write(zip64End);
+        }
+
+        ByteBuffer end = buffer(22);
+        end.putInt(END_OF_CENTRAL_DIRECTORY);
+        end.putShort((short) 0); // disk number
+        end.putShort((short) 0); // disk with the central directory
+        end.putShort((short) (zip64 ? 0xFFFF : count));
+        end.putShort((short) (zip64 ? 0xFFFF : count));
+        end.putInt((int) (zip64 ? ZIP64_MAGIC : directorySize));
+        end.putInt((int) (zip64 ? ZIP64_MAGIC : directoryOffset));
+        end.putShort((short) 0); // comment length
+        this.write(end);
+    }
+
+    /**
+     * Finish the zip file and close the output stream.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.finish();
+        } finally {
+            this.out.close();
+        }
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        this.out.write(buffer.array(), 0, buffer.position());
+        this.offset += buffer.position();
+    }
+
+    /**
+     * An entry that has been written and will be included in the central directory.
+     */
+    private record CentralEntry(byte[] name, int flags, int method, long crc,
+                                long compressedSize, long size, long localHeaderOffset) {}
+}
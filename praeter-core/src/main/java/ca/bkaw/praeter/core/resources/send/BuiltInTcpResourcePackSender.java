@@ -1,15 +1,16 @@
 package ca.bkaw.praeter.core.resources.send;
 
 import ca.bkaw.praeter.core.Praeter;
+import ca.bkaw.praeter.core.resources.PacksHolder;
 import ca.bkaw.praeter.core.resources.bake.BakedResourcePack;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.IllegalReferenceCountException;
 import net.kyori.adventure.key.Key;
 import net.kyori.adventure.text.Component;
 import org.bukkit.Bukkit;
@@ -18,11 +19,16 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A {@link ResourcePackSender} implementation that sends resource packs by
@@ -34,6 +40,14 @@ public class BuiltInTcpResourcePackSender extends ChannelInboundHandlerAdapter i
     private static final Key HANDLER_KEY = Key.key(Praeter.NAMESPACE, HANDLER_NAME);
     private static final String PATH_PREFIX = "/praeter/";
 
+    /**
+     * The bytes that a request line for a resource pack starts with, precomputed to
+     * avoid allocating when checking received frames.
+     */
+    private static final byte[] REQUEST_PREFIX = ("GET " + PATH_PREFIX).getBytes(StandardCharsets.US_ASCII);
+
+    private final Map<BakedResourcePack, ServedPack> servedPacks = new ConcurrentHashMap<>();
+
     public BuiltInTcpResourcePackSender() throws ReflectiveOperationException {
         this.inject();
         Praeter.get().getLogger().info("Using the server's TCP connections to send resource packs.");
@@ -46,16 +60,33 @@ public class BuiltInTcpResourcePackSender extends ChannelInboundHandlerAdapter i
 
     @Override
     public void send(@NotNull BakedResourcePack resourcePack, @NotNull Player player, boolean required, @Nullable Component prompt) {
-        Path file = Utils.getPath(resourcePack);
         String id = Praeter.get().getResourceManager().getBakedPacks().getId(resourcePack);
         String path = PATH_PREFIX + id;
         int port = Bukkit.getPort();
-        Utils.sendRequest(resourcePack, file, player, required, prompt, port, path);
+        Utils.sendRequest(resourcePack, player, required, prompt, port, path);
+    }
+
+    @Override
+    public void onPacksBaked(@NotNull PacksHolder<BakedResourcePack> bakedPacks) {
+        // Load the pack files once, instead of reading them for every request.
+        this.releaseServedPacks();
+        bakedPacks.getPacks().values().forEach(this::getServedPack);
     }
 
     @Override
     public void remove() {
+        this.releaseServedPacks();
+    }
 
+    private void releaseServedPacks() {
+        // Remove each pack before releasing it so that new requests do not get it.
+        // Responses that are still being written hold their own references.
+        for (BakedResourcePack resourcePack : this.servedPacks.keySet()) {
+            ServedPack servedPack = this.servedPacks.remove(resourcePack);
+            if (servedPack != null) {
+                servedPack.release();
+            }
+        }
     }
 
     private void inject() throws ReflectiveOperationException {
@@ -81,96 +112,197 @@ public class BuiltInTcpResourcePackSender extends ChannelInboundHandlerAdapter i
 
     @Override
     public void channelRead(@NotNull ChannelHandlerContext ctx, @NotNull Object msg) throws Exception {
-        ByteBuf byteBuf = (ByteBuf) msg;
-        byteBuf.markReaderIndex();
-        if (!this.handle(ctx, byteBuf)) {
-            // handle returned false, reset reader and call the super method to let vanilla
-            // handle the connection.
-            byteBuf.resetReaderIndex();
-            super.channelRead(ctx, msg);
+        if (msg instanceof ByteBuf byteBuf) {
+            switch (matchRequest(byteBuf)) {
+                case MATCH -> {
+                    try {
+                        this.handle(ctx, byteBuf);
+                    } finally {
+                        byteBuf.release();
+                    }
+                    return;
+                }
+                case NO_MATCH -> {
+                    // The first frame was not a request for a pack, so it is the start of
+                    // a Minecraft connection. Remove the handler so that the rest of the
+                    // packets in this connection never pass through it.
+                    ctx.pipeline().remove(this);
+                }
+                case INCOMPLETE -> {
+                    // Not enough bytes to decide, let vanilla handle this frame.
+                }
+            }
         }
+        super.channelRead(ctx, msg);
     }
 
-    private boolean handle(ChannelHandlerContext ctx, ByteBuf byteBuf) {
-        // There needs to be at least 14 bytes for "GET /praeter/<resource pack id>" to fit.
-        if (byteBuf.capacity() < 14) return false;
-
-        // Start by efficiently comparing byte by byte as this is some hot networking
-        // code. This code runs for every received packet.
-
-        if (byteBuf.readByte() != 'G') return false;
-        if (byteBuf.readByte() != 'E') return false;
-        if (byteBuf.readByte() != 'T') return false;
-        if (byteBuf.readByte() != ' ') return false;
-
-        // An HTTP GET request was received.
-        // Let's ensure it is requesting a resource pack from praeter
-
-        byte[] pathBytes = PATH_PREFIX.getBytes(StandardCharsets.UTF_8);
-        for (byte pathByte : pathBytes) {
-            if (byteBuf.readByte() != pathByte) return false;
+    /**
+     * Check whether the buffer starts with a request for a praeter resource pack.
+     * <p>
+     * This only reads bytes at absolute indices, the reader index is not changed and
+     * nothing is allocated.
+     *
+     * @param byteBuf The received buffer.
+     * @return The result of the match.
+     */
+    private static RequestMatch matchRequest(ByteBuf byteBuf) {
+        int readerIndex = byteBuf.readerIndex();
+        int readable = byteBuf.readableBytes();
+        int length = Math.min(readable, REQUEST_PREFIX.length);
+        for (int i = 0; i < length; i++) {
+            if (byteBuf.getByte(readerIndex + i) != REQUEST_PREFIX[i]) {
+                return RequestMatch.NO_MATCH;
+            }
         }
+        // The request line must also contain a pack id after the prefix
+        return readable > REQUEST_PREFIX.length ? RequestMatch.MATCH : RequestMatch.INCOMPLETE;
+    }
 
-        // Read the pack id from the path
+    private void handle(ChannelHandlerContext ctx, ByteBuf byteBuf) {
+        // An HTTP GET request for a resource pack from praeter was received.
+        // Read the pack id from the path, it ends at the space before the HTTP version.
 
-        StringBuilder resourcePackId = new StringBuilder();
-        byte b;
-        while (byteBuf.readableBytes() > 0 && (b = byteBuf.readByte()) != ' ') {
-            resourcePackId.append((char) b);
+        int idStart = byteBuf.readerIndex() + REQUEST_PREFIX.length;
+        int idEnd = byteBuf.indexOf(idStart, byteBuf.writerIndex(), (byte) ' ');
+        if (idEnd == -1) {
+            idEnd = byteBuf.writerIndex();
         }
+        String resourcePackId = byteBuf.toString(idStart, idEnd - idStart, StandardCharsets.US_ASCII);
 
         // Get the requested pack
 
         BakedResourcePack resourcePack = Praeter.get().getResourceManager()
-            .getBakedPacks().getById(resourcePackId.toString());
+            .getBakedPacks().getById(resourcePackId);
 
         if (resourcePack == null) {
             // Sorry, we do not gracefully reply with an HTTP 404 response. We just close
             // the connection.
             ctx.close();
-
-            // Return true, we have handled the packet.
-            return true;
+            return;
         }
 
         try {
-            Path path = Utils.getPath(resourcePack);
-
-            long contentLength = Files.size(path);
-
-            String headerText =
-                """
-                    HTTP/1.1 200 OK
-                    Server: Praeter
-                    Content-Type: application/zip
-                    Content-Length: %d
-                                
-                    """.formatted(contentLength);
-            byte[] headerBytes = headerText.getBytes(StandardCharsets.UTF_8);
-
-            ByteBuf response = Unpooled.buffer(headerBytes.length + (int) contentLength);
-
-            response.writeBytes(headerBytes);
-
-            ByteBufOutputStream stream = new ByteBufOutputStream(response);
-            Files.copy(path, stream);
-            stream.close();
+            ServedPack servedPack = this.getServedPack(resourcePack);
+
+            // The buffers are shared between all connections, the duplicates are
+            // released once the response has been written.
+            ByteBuf response = servedPack.retainedResponse();
+            if (response == null) {
+                // The pack was released while handling the request, for example
+                // because the packs were baked again. Just close the connection.
+                ctx.close();
+                return;
+            }
 
             // Send the response
             ctx.pipeline().firstContext().writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
-
-            // Return true, we have handled the packet
-            return true;
-        } catch (IOException e) {
+        } catch (UncheckedIOException e) {
             Praeter.get().getLogger().severe("Failed to reply with resource pack.");
             e.printStackTrace();
 
             // Sorry, we do not gracefully reply with an HTTP 500 response. We just close
             // the connection.
             ctx.close();
+        }
+    }
+
+    /**
+     * Get the buffers to reply with for the specified pack, loading them if the pack
+     * has not been loaded yet.
+     *
+     * @param resourcePack The resource pack.
+     * @return The served pack.
+     * @throws UncheckedIOException If an I/O error occurs while loading the pack.
+     */
+    private ServedPack getServedPack(BakedResourcePack resourcePack) {
+        return this.servedPacks.computeIfAbsent(resourcePack, pack -> {
+            try {
+                return loadPack(Utils.getPath(pack));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Load the pack file by memory-mapping it, and create the response header.
+     *
+     * @param path The path of the pack file.
+     * @return The served pack.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static ServedPack loadPack(Path path) throws IOException {
+        ByteBuf content;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel has been closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            content = Unpooled.wrappedBuffer(mapped);
+        }
+
+        String headerText =
+            """
+                HTTP/1.1 200 OK
+                Server: Praeter
+                Content-Type: application/zip
+                Content-Length: %d
+                            
+                """.formatted(content.readableBytes());
+        ByteBuf header = Unpooled.wrappedBuffer(headerText.getBytes(StandardCharsets.UTF_8));
+
+        return new ServedPack(header, content);
+    }
+
+    /**
+     * The result of checking whether a received frame is a request for a pack.
+     */
+    private enum RequestMatch {
+        /**
+         * The frame is a request for a pack.
+         */
+        MATCH,
+        /**
+         * The frame is not a request for a pack.
+         */
+        NO_MATCH,
+        /**
+         * The frame is too short to tell.
+         */
+        INCOMPLETE
+    }
+
+    /**
+     * A baked pack that is ready to be sent, shared between all connections.
+     *
+     * @param header The HTTP response header.
+     * @param content The read-only, memory-mapped, contents of the pack file.
+     */
+    private record ServedPack(ByteBuf header, ByteBuf content) {
+        /**
+         * Create a response with retained duplicates of the buffers.
+         *
+         * @return The response, or null if the pack has already been released.
+         */
+        @Nullable
+        private ByteBuf retainedResponse() {
+            ByteBuf header;
+            ByteBuf content;
+            try {
+                header = this.header.retainedDuplicate();
+            } catch (IllegalReferenceCountException e) {
+                return null;
+            }
+            try {
+                content = this.content.retainedDuplicate();
+            } catch (IllegalReferenceCountException e) {
+                header.release();
+                return null;
+            }
+            return Unpooled.wrappedBuffer(header, content);
+        }
 
-            // Return true, we have handled the packet.
-            return true;
+        private void release() {
+            this.header.release();
+            this.content.release();
         }
     }
 }
@@ -1,6 +1,8 @@
 package ca.bkaw.praeter.core.resources.send;
 
 import ca.bkaw.praeter.core.Praeter;
+import ca.bkaw.praeter.core.resources.PacksHolder;
+import ca.bkaw.praeter.core.resources.bake.BakedPackFile;
 import ca.bkaw.praeter.core.resources.bake.BakedResourcePack;
 import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
@@ -15,7 +17,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An implementation of {@link ResourcePackSender} that sends resource packs via
@@ -27,8 +30,11 @@ public class HttpServerResourcePackSender implements ResourcePackSender {
      */
     public static final int DEFAULT_PORT = 50864;
 
+    private static final String PATH_PREFIX = "/praeter/";
+
     private final HttpServer server;
     private final int port;
+    private final Map<String, HttpContext> contexts = new ConcurrentHashMap<>();
 
     public HttpServerResourcePackSender() throws IOException {
         this.port = Praeter.get().getConfig().sender().httpServer().port();
@@ -41,16 +47,26 @@ public class HttpServerResourcePackSender implements ResourcePackSender {
 
     @Override
     public void send(@NotNull BakedResourcePack resourcePack, @NotNull Player player, boolean required, @Nullable Component prompt) {
-        Path file = Utils.getPath(resourcePack);
-        String path = "/";
-        Handler handler = new Handler(file);
-        try {
-            handler.context = this.server.createContext(path, handler);
-        } catch (Throwable e) {
-            e.printStackTrace();
-        }
+        String id = Praeter.get().getResourceManager().getBakedPacks().getId(resourcePack);
+        String path = PATH_PREFIX + id;
+        // Atomic, so that concurrent sends do not create the same context twice
+        this.contexts.computeIfAbsent(id, k -> this.createContext(k, resourcePack));
 
-        Utils.sendRequest(resourcePack, file, player, required, prompt, this.port, path);
+        Utils.sendRequest(resourcePack, player, required, prompt, this.port, path);
+    }
+
+    @Override
+    public void onPacksBaked(@NotNull PacksHolder<BakedResourcePack> bakedPacks) {
+        // The contexts are kept so that the packs can be downloaded again, for
+        // example when the first attempt fails.
+        this.contexts.values().forEach(this.server::removeContext);
+        this.contexts.clear();
+        bakedPacks.getPacks().forEach((id, resourcePack) ->
+            this.contexts.computeIfAbsent(id, k -> this.createContext(k, resourcePack)));
+    }
+
+    private HttpContext createContext(String id, BakedResourcePack resourcePack) {
+        return this.server.createContext(PATH_PREFIX + id, new Handler(Utils.getFile(resourcePack)));
     }
 
     @Override
@@ -58,24 +74,20 @@ public class HttpServerResourcePackSender implements ResourcePackSender {
         this.server.stop(1);
     }
 
-    private class Handler implements HttpHandler {
-        private final Path path;
-        private HttpContext context;
+    private static class Handler implements HttpHandler {
+        private final BakedPackFile file;
 
-        private Handler(Path path) {
-            this.path = path;
+        private Handler(BakedPackFile file) {
+            this.file = file;
         }
 
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            try (InputStream inputStream = Files.newInputStream(this.path)) {
-                exchange.sendResponseHeaders(200, Files.size(this.path));
+            try (InputStream inputStream = Files.newInputStream(this.file.path())) {
+                exchange.sendResponseHeaders(200, this.file.size());
                 inputStream.transferTo(exchange.getResponseBody());
-                exchange.close();
             } finally {
-                server.removeContext(context);
-                // TODO if the pack fails to download the first time due to the hash changing,
-                //  the second attempt will also fail because of this call to removeContext
+                exchange.close();
             }
         }
     }
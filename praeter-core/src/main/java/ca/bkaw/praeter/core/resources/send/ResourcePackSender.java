@@ -1,7 +1,9 @@
 package ca.bkaw.praeter.core.resources.send;
 
 import ca.bkaw.praeter.core.Praeter;
+import ca.bkaw.praeter.core.resources.PacksHolder;
 import ca.bkaw.praeter.core.resources.ResourceManager;
+import ca.bkaw.praeter.core.resources.bake.BakedPackFile;
 import ca.bkaw.praeter.core.resources.bake.BakedResourcePack;
 import net.kyori.adventure.text.Component;
 import org.bukkit.entity.Player;
@@ -14,10 +16,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URL;
 import java.net.UnknownHostException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 /**
  * A sender responsible for sending resource packs to players.
@@ -45,6 +44,16 @@ public interface ResourcePackSender {
               boolean required,
               @Nullable Component prompt);
 
+    /**
+     * Called when the packs have been baked and their files have been written.
+     * <p>
+     * Can be used to prepare the packs for sending, so that work does not have to be
+     * done when a player joins.
+     *
+     * @param bakedPacks The holder of the baked packs.
+     */
+    default void onPacksBaked(@NotNull PacksHolder<BakedResourcePack> bakedPacks) {}
+
     /**
      * Called when the resource pack sender is being removed. Can be used to clean up.
      */
@@ -60,32 +69,45 @@ public interface ResourcePackSender {
         private static String remoteHostname;
 
         /**
-         * Get the path of a resource pack.
+         * Get the file of a resource pack.
          * <p>
-         * The file will exist when this method returns. If the file does not exist and
-         * exception is thrown.
+         * The file is set when the pack is baked and written, and holds the hash of
+         * the pack so that it does not have to be computed when sending the pack.
+         *
+         * @param resourcePack The resource pack to get the file of.
+         * @return The file.
+         * @throws IllegalArgumentException If the pack has not been written to a file.
+         */
+        @NotNull
+        public static BakedPackFile getFile(@NotNull BakedResourcePack resourcePack) {
+            BakedPackFile file = resourcePack.getFile();
+            if (file != null) {
+                return file;
+            }
+            throw new IllegalArgumentException("Can not send the specified pack.");
+        }
+
+        /**
+         * Get the path of a resource pack.
          *
          * @param resourcePack The resource pack to get the path of.
          * @return The path.
+         * @throws IllegalArgumentException If the pack has not been written to a file.
+         * @see #getFile(BakedResourcePack)
          */
         @NotNull
         public static Path getPath(@NotNull BakedResourcePack resourcePack) {
-            ResourceManager resourceManager = Praeter.get().getResourceManager();
-            Path resourcePacksFolder = resourceManager.getResourcePacksFolder();
-            String filename = resourceManager.getBakedPacks().getId(resourcePack) + ".zip";
-            Path path = resourcePacksFolder.resolve(filename);
-            if (Files.exists(path)) {
-                return path;
-            }
-            throw new IllegalArgumentException("Can not send the specified pack.");
+            return getFile(resourcePack).path();
         }
 
         /**
          * Send a resource pack request to the player. It is the responsibility of the
          * {@link ResourcePackSender} to ensure this request is handled.
+         * <p>
+         * The hash that was computed when the pack was baked is used, so no file
+         * I/O is performed.
          *
          * @param resourcePack The resource pack being sent.
-         * @param file The path of the resource pack being sent.
          * @param player The player to send to.
          * @param required Whether the resource pack application is mandatory.
          * @param prompt The prompt to display to the player.
@@ -93,19 +115,12 @@ public interface ResourcePackSender {
          * @param path The path to use in the url. Should start with "/".
          */
         public static void sendRequest(BakedResourcePack resourcePack,
-                                Path file,
                                 Player player,
                                 boolean required,
                                 @Nullable Component prompt,
                                 int port,
                                 String path) {
-            byte[] hash;
-            try {
-                byte[] bytes = Files.readAllBytes(file);
-                hash = MessageDigest.getInstance("SHA-1").digest(bytes);
-            } catch (IOException | NoSuchAlgorithmException e) {
-                throw new RuntimeException(e);
-            }
+            byte[] hash = getFile(resourcePack).sha1();
 
             String url = "http://" + Utils.getHostnameFor(player) + ":" + port + path;
             ResourceManager resourceManager = Praeter.get().getResourceManager();
@@ -1,6 +1,7 @@
 package ca.bkaw.praeter.gui.components;
 
 import ca.bkaw.praeter.core.resources.draw.DrawTextUtils;
+import ca.bkaw.praeter.core.resources.draw.PixelBuffer;
 import ca.bkaw.praeter.gui.GuiUtils;
 import ca.bkaw.praeter.gui.component.GuiComponent;
 import ca.bkaw.praeter.gui.font.RenderSetupContext;
@@ -8,12 +9,9 @@ import ca.bkaw.praeter.gui.gui.CustomGui;
 import org.bukkit.NamespacedKey;
 import org.bukkit.map.MinecraftFont;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 
 /**
  * A button in a {@link CustomGui}.
@@ -78,36 +76,29 @@ public class Button extends GuiComponent {
         if (height != 18) {
             throw new UnsupportedOperationException("Cannot make buttons that are higher than one row yet, sorry!");
         }
-        BufferedImage image = new BufferedImage(
-            width,
-            height,
-            BufferedImage.TYPE_INT_ARGB
-        );
-        Graphics2D graphics = image.createGraphics();
+        PixelBuffer image = new PixelBuffer(width, height);
+        PixelBuffer sprite = PixelBuffer.read(button);
 
         // Draw the bulk of the image
-        graphics.drawImage(button, 0, 0, null);
+        image.blit(sprite, 0, 0);
 
         // Draw the bottom edge
-        BufferedImage bottom = button.getSubimage(0, HEIGHT - BOTTOM_HEIGHT, width, BOTTOM_HEIGHT);
-        graphics.drawImage(bottom, 0, height - BOTTOM_HEIGHT, null);
+        image.blit(sprite, 0, HEIGHT - BOTTOM_HEIGHT, width, BOTTOM_HEIGHT, 0, height - BOTTOM_HEIGHT);
 
         // Draw the right edge
-        BufferedImage right = button.getSubimage(WIDTH - END_WIDTH, 0, END_WIDTH, height);
-        graphics.drawImage(right, width - END_WIDTH, 0, END_WIDTH, height, null);
+        image.blit(sprite, WIDTH - END_WIDTH, 0, END_WIDTH, height, width - END_WIDTH, 0);
 
         // Draw the bottom right corner
-        BufferedImage bottomRight = button.getSubimage(WIDTH - END_WIDTH, HEIGHT - BOTTOM_HEIGHT, END_WIDTH, BOTTOM_HEIGHT);
-        graphics.drawImage(bottomRight, width - END_WIDTH, height - BOTTOM_HEIGHT, null);
+        image.blit(sprite, WIDTH - END_WIDTH, HEIGHT - BOTTOM_HEIGHT, END_WIDTH, BOTTOM_HEIGHT,
+            width - END_WIDTH, height - BOTTOM_HEIGHT);
 
-        return image;
+        return image.getImage();
     }
 
     @Override
     public void onSetup(RenderSetupContext context) throws IOException {
         // Read the vanilla button sprite from the widgets texture
-        Path widgetsPath = context.getResourcePacks().getTexturePath(WIDGETS_TEXTURE);
-        BufferedImage widgets = ImageIO.read(Files.newInputStream(widgetsPath));
+        BufferedImage widgets = context.getResourcePacks().readTexture(WIDGETS_TEXTURE);
         BufferedImage button = widgets.getSubimage(0, OFFSET_Y, WIDTH, HEIGHT);
 
         // Create the image for the button
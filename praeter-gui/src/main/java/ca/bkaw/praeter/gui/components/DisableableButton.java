@@ -10,12 +10,9 @@ import ca.bkaw.praeter.gui.font.RenderSetupContext;
 import ca.bkaw.praeter.gui.gui.CustomGui;
 import org.bukkit.map.MinecraftFont;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.function.Consumer;
 
 /**
@@ -63,8 +60,7 @@ public class DisableableButton extends Button {
     @Override
     public void onSetup(RenderSetupContext context) throws IOException {
         // Read the vanilla button sprite from the widgets texture
-        Path widgetsPath = context.getResourcePacks().getTexturePath(WIDGETS_TEXTURE);
-        BufferedImage widgets = ImageIO.read(Files.newInputStream(widgetsPath));
+        BufferedImage widgets = context.getResourcePacks().readTexture(WIDGETS_TEXTURE);
         BufferedImage enabledButton = widgets.getSubimage(0, OFFSET_Y, WIDTH, HEIGHT);
         BufferedImage disabledButton = widgets.getSubimage(0, DISABLED_OFFSET_Y, WIDTH, HEIGHT);
 
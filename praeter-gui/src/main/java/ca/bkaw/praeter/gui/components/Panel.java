@@ -1,5 +1,6 @@
 package ca.bkaw.praeter.gui.components;
 
+import ca.bkaw.praeter.core.resources.draw.PixelBuffer;
 import ca.bkaw.praeter.gui.GuiUtils;
 import ca.bkaw.praeter.gui.component.GuiComponent;
 import ca.bkaw.praeter.gui.font.RenderSetupContext;
@@ -58,23 +59,19 @@ public class Panel extends GuiComponent {
      * @return The created image.
      */
     public static BufferedImage createPanelImage(int width, int height) {
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D graphics = image.createGraphics();
+        PixelBuffer image = new PixelBuffer(width, height);
 
         // Will everything with the background color
-        graphics.setColor(BACKGROUND_COLOR);
-        graphics.fillRect(0, 0, width, height);
+        image.fill(0, 0, width, height, BACKGROUND_COLOR.getRGB());
 
         // Left and top edge
-        graphics.setColor(DARK_COLOR);
-        graphics.fillRect(0, 0, width - 1, 1);
-        graphics.fillRect(0, 0, 1, height - 1);
+        image.fill(0, 0, width - 1, 1, DARK_COLOR.getRGB());
+        image.fill(0, 0, 1, height - 1, DARK_COLOR.getRGB());
 
         // Right and bottom edge
-        graphics.setColor(LIGHT_COLOR);
-        graphics.fillRect(width - 1, 1, 1, height - 1);
-        graphics.fillRect(1, height - 1, width - 1, 1);
+        image.fill(width - 1, 1, 1, height - 1, LIGHT_COLOR.getRGB());
+        image.fill(1, height - 1, width - 1, 1, LIGHT_COLOR.getRGB());
 
-        return image;
+        return image.getImage();
     }
 }
@@ -5,19 +5,15 @@ import ca.bkaw.praeter.core.resources.ResourcePackList;
 import ca.bkaw.praeter.core.resources.draw.CompositeDrawOrigin;
 import ca.bkaw.praeter.core.resources.draw.DrawOrigin;
 import ca.bkaw.praeter.core.resources.draw.DrawOriginResolver;
-import ca.bkaw.praeter.core.resources.draw.DrawTextUtils;
 import ca.bkaw.praeter.core.resources.draw.Drawable;
-import ca.bkaw.praeter.core.resources.pack.ResourcePack;
+import ca.bkaw.praeter.core.resources.draw.PixelBuffer;
 import ca.bkaw.praeter.gui.GuiUtils;
 import org.bukkit.NamespacedKey;
 import org.bukkit.map.MapFont;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 
 /**
  * An object responsible for painting the background in a custom gui.
@@ -85,13 +81,13 @@ public class GuiBackgroundPainter implements Drawable<GuiBackgroundPainter> {
         }
     };
 
-    private final BufferedImage image;
+    private final PixelBuffer image;
     private final ResourcePackList resourcePacks;
     private DrawOrigin origin = GuiUtils.GUI_SLOT_ORIGIN;
 
     public GuiBackgroundPainter(int rows, ResourcePackList resourcePacks) throws IOException {
         int height = TOP_PADDING + rows * GuiUtils.SLOT_SIZE;
-        this.image = new BufferedImage(WIDTH, height, BufferedImage.TYPE_INT_ARGB);
+        this.image = new PixelBuffer(WIDTH, height);
         this.resourcePacks = resourcePacks;
         this.paintBackground();
     }
@@ -102,30 +98,20 @@ public class GuiBackgroundPainter implements Drawable<GuiBackgroundPainter> {
      * @return The background image.
      */
     public BufferedImage getImage() {
-        return this.image;
+        return this.image.getImage();
     }
 
     private void paintBackground() throws IOException {
-        ResourcePack vanillaAssets = Praeter.get().getResourceManager().getPacks().getVanillaAssets();
-        Path generic54Path = vanillaAssets.getTexturePath(GENERIC_54_TEXTURE);
-
-        BufferedImage generic54 = ImageIO.read(Files.newInputStream(generic54Path));
-
-        // Get the top edge to insert into the generated image
-        BufferedImage topEdge = generic54.getSubimage(0, 0, WIDTH, TOP_EDGE_HEIGHT);
-
-        // Get the row right below the top edge. This is the row of pixels we will loop
-        // for the rest of the image.
-        BufferedImage pixelRow = generic54.getSubimage(0, TOP_EDGE_HEIGHT + 1, WIDTH, 1);
-
-        Graphics2D graphics = this.image.createGraphics();
+        PixelBuffer generic54 = PixelBuffer.read(Praeter.get().getResourceManager().getPacks()
+            .readVanillaTexture(GENERIC_54_TEXTURE));
 
         // Draw the top edge
-        graphics.drawImage(topEdge, 0, 0, null);
+        this.image.blit(generic54, 0, 0, WIDTH, TOP_EDGE_HEIGHT, 0, 0);
 
-        // Draw the rest of the image
+        // Draw the rest of the image by repeating the row of pixels right below the
+        // top edge
         for (int y = TOP_EDGE_HEIGHT; y < this.image.getHeight(); y++) {
-            graphics.drawImage(pixelRow, 0, y, null);
+            this.image.blit(generic54, 0, TOP_EDGE_HEIGHT + 1, WIDTH, 1, 0, y);
         }
     }
 
@@ -153,20 +139,13 @@ public class GuiBackgroundPainter implements Drawable<GuiBackgroundPainter> {
     public void carve(int x, int y, int width, int height) {
         x += ORIGIN_RESOLVER.resolveOriginX(this.origin);
         y += ORIGIN_RESOLVER.resolveOriginY(this.origin);
-        for (int offsetX = 0; offsetX < width; offsetX++) {
-            for (int offsetY = 0; offsetY < height; offsetY++) {
-                int pixelX = x + offsetX;
-                int pixelY = y + offsetY;
-                this.image.setRGB(pixelX, pixelY, 0);
-            }
-        }
+        this.image.carve(x, y, width, height);
     }
 
     @Override
     public GuiBackgroundPainter drawImage(NamespacedKey textureKey, int x, int y) throws IOException {
         // Read the image
-        Path texturePath = this.resourcePacks.getTexturePath(textureKey);
-        BufferedImage image = ImageIO.read(Files.newInputStream(texturePath));
+        BufferedImage image = this.resourcePacks.readTexture(textureKey);
 
         // Draw the image
         this.drawImage(image, x, y);
@@ -179,8 +158,7 @@ public class GuiBackgroundPainter implements Drawable<GuiBackgroundPainter> {
         x += ORIGIN_RESOLVER.resolveOriginX(this.origin);
         y += ORIGIN_RESOLVER.resolveOriginY(this.origin);
 
-        Graphics2D graphics = this.image.createGraphics();
-        graphics.drawImage(image, x, y, null);
+        this.image.blit(PixelBuffer.read(image), x, y);
         return this;
     }
 
@@ -189,7 +167,7 @@ public class GuiBackgroundPainter implements Drawable<GuiBackgroundPainter> {
         x += ORIGIN_RESOLVER.resolveOriginX(this.origin);
         y += ORIGIN_RESOLVER.resolveOriginY(this.origin);
 
-        DrawTextUtils.drawText(this.image, x, y, text, color, font);
+        this.image.drawText(text, x, y, color.getRGB(), font);
 
         return this;
     }
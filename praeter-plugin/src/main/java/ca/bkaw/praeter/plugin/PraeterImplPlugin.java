@@ -11,10 +11,15 @@ import ca.bkaw.praeter.core.resources.ResourceManager;
 import ca.bkaw.praeter.core.resources.ResourcePacksHolder;
 import ca.bkaw.praeter.core.resources.apply.DefaultResourcePackApplier;
 import ca.bkaw.praeter.core.resources.bake.BakedResourcePack;
+import ca.bkaw.praeter.core.resources.bake.PackBuildCache;
+import ca.bkaw.praeter.core.resources.font.GlyphAtlasPacker;
 import ca.bkaw.praeter.core.resources.pack.JsonResource;
 import ca.bkaw.praeter.core.resources.pack.ResourcePack;
 import ca.bkaw.praeter.core.resources.pack.VanillaAssets;
 import ca.bkaw.praeter.core.resources.pack.collision.ResourceCollisionException;
+import ca.bkaw.praeter.core.resources.pack.output.CompressionPolicy;
+import ca.bkaw.praeter.core.resources.pack.output.PackZipWriter;
+import ca.bkaw.praeter.core.resources.pack.output.PngOptimizer;
 import ca.bkaw.praeter.core.resources.send.BuiltInTcpResourcePackSender;
 import ca.bkaw.praeter.core.resources.send.HttpServerResourcePackSender;
 import ca.bkaw.praeter.core.resources.send.ResourcePackSender;
@@ -27,6 +32,7 @@ import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.Nullable;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -34,8 +40,24 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The plugin that loads the praeter classes into bukkit.
@@ -164,24 +186,31 @@ public class PraeterImplPlugin extends JavaPlugin implements PraeterPlugin {
     private void setupMainResourcePack() {
         this.getLogger().info("Setting up resource packs");
         ResourceManager resourceManager = Praeter.get().getResourceManager();
-        Path resourcePacksFolder = Praeter.get().getResourceManager().getResourcePacksFolder();
-        Path path = resourcePacksFolder.resolve("main.zip");
+        // The pack is built in memory and written to main.zip once when baking, so
+        // that the written zip is reproducible and the previous main.zip is only
+        // replaced once the new one is complete.
         ResourcePack mainResourcePack;
         try {
-            Files.deleteIfExists(path);
-            mainResourcePack = ResourcePack.loadZip(path);
+            mainResourcePack = ResourcePack.createInMemory();
             mainResourcePack.create("Praeter-managed resource pack");
         } catch (IOException e) {
             throw new RuntimeException("Failed to set up the main resource pack.", e);
         }
         Path storePath = this.internalDirectory.resolve("customModelData.json");
+        boolean buildCacheEnabled = Praeter.get().getConfig().resourcePacks().buildCache();
+        PackBuildCache buildCache = new PackBuildCache(buildCacheEnabled);
+        buildCache.addInput("minecraft_version", this.getServer().getMinecraftVersion());
+        CompressionPolicy compression = Praeter.get().getConfig().resourcePacks().compression();
+        buildCache.addInput("compression", new TreeSet<>(compression.storedExtensions()) + " " + compression.level());
+        buildCache.addInput("optimize_textures", String.valueOf(Praeter.get().getConfig().resourcePacks().optimizeTextures()));
         CustomModelDataStore customModelDataStore;
         try {
             customModelDataStore = new CustomModelDataStore(storePath);
+            buildCache.addInput("custom_model_data", customModelDataStore.getContentHash());
         } catch (IOException e) {
             throw new RuntimeException("Failed to read custom model data store.", e);
         }
-        ResourcePacksHolder holder = new ResourcePacksHolder(mainResourcePack, customModelDataStore);
+        ResourcePacksHolder holder = new ResourcePacksHolder(mainResourcePack, customModelDataStore, buildCache);
         resourceManager.setPacks(holder);
     }
 
@@ -191,68 +220,209 @@ public class PraeterImplPlugin extends JavaPlugin implements PraeterPlugin {
     private void setupVanillaAssets() {
         ResourceManager resourceManager = Praeter.get().getResourceManager();
         Path resourcePacksFolder = Praeter.get().getResourceManager().getResourcePacksFolder();
-        Path vanillaAssetsPath = resourcePacksFolder.resolve("vanilla.zip");
+        Path clientJarPath = resourcePacksFolder.resolve("client.jar");
         try {
-            resourceManager.getPacks().setVanillaAssets(VanillaAssets.readOrExtract(vanillaAssetsPath));
+            // The assets used to be extracted to vanilla.zip, which is no longer used
+            Files.deleteIfExists(resourcePacksFolder.resolve("vanilla.zip"));
+            resourceManager.getPacks().setVanillaAssets(VanillaAssets.readOrDownload(clientJarPath,
+                Praeter.get().getConfig().resourcePacks().vanillaAssets()));
         } catch (IOException e) {
-            throw new RuntimeException("Failed to read or extract vanilla assets.", e);
+            throw new RuntimeException("Failed to read or download vanilla assets.", e);
         }
     }
 
     /**
      * Include assets from plugins that implement {@link PraeterPlugin} into the
      * resource packs they affect.
+     * <p>
+     * The plugin jars are read on multiple threads, a few plugins ahead of the one
+     * being included. The assets are then included one plugin at a time in the
+     * plugin order, so the result is the same as when reading the jars one by one.
+     * <p>
+     * Worlds where not all plugins are enabled get a pack of their own. The plugins
+     * that are enabled in all packs are included first, after which the main pack is
+     * copied for each world pack, so that those plugins are only included once.
      *
      * @see ResourceManager#getResourcePacks(Plugin)
      */
     private void includePluginAssets() {
         this.getLogger().info("Including plugin assets");
-        ResourceManager resourceManager = Praeter.get().getResourceManager();
+        List<Plugin> plugins = new ArrayList<>();
         for (Plugin plugin : this.getServer().getPluginManager().getPlugins()) {
-            if (!(plugin instanceof PraeterPlugin praeterPlugin)) {
-                continue;
+            if (plugin instanceof PraeterPlugin) {
+                plugins.add(plugin);
             }
+        }
 
-            // Read the assets
-            ResourcePack pluginAssets;
-            try {
-                Path jarPath = Path.of(plugin.getClass().getProtectionDomain().getCodeSource().getLocation().toURI());
-                pluginAssets = ResourcePack.loadZip(jarPath);
-            } catch (IOException | URISyntaxException e) {
-                throw new RuntimeException("Failed to open plugin jar file.", e);
-            }
+        Set<String> pluginNames = new TreeSet<>();
+        plugins.forEach(plugin -> pluginNames.add(plugin.getName()));
+        Map<Set<String>, String> worldPacks = this.getWorldPacks(pluginNames);
+        Set<String> commonPlugins = new HashSet<>(pluginNames);
+        worldPacks.keySet().forEach(commonPlugins::retainAll);
+        // The sort is stable, so the plugin order is otherwise kept
+        plugins.sort(Comparator.comparing((Plugin plugin) -> !commonPlugins.contains(plugin.getName())));
+        boolean worldPacksCreated = false;
+
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), plugins.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Praeter Plugin Assets Reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Limit how many plugins are read ahead so that not all assets are kept in
+        // memory at once
+        int window = threads * 2;
+        Deque<Future<PluginAssets>> pending = new ArrayDeque<>(window);
+        int submitted = 0;
 
-            // Include assets into resource packs
-            for (ResourcePack resourcePack : resourceManager.getResourcePacks(plugin)) {
-                try {
-                    resourcePack.include(pluginAssets, path -> path.startsWith("assets/"));
-                } catch (ResourceCollisionException | IOException e) {
-                    getLogger().severe("Failed to include assets from " + plugin.getName()
-                            + " into resource pack " + resourceManager.getPacks().getId(resourcePack));
-                    e.printStackTrace();
-                    // Break out of this loop (continue to next plugin)
-                    break;
+        try {
+            for (Plugin plugin : plugins) {
+                if (!worldPacksCreated && !commonPlugins.contains(plugin.getName())) {
+                    this.createWorldPacks(worldPacks);
+                    worldPacksCreated = true;
+                }
+
+                while (submitted < plugins.size() && pending.size() < window) {
+                    Plugin next = plugins.get(submitted++);
+                    pending.add(executor.submit(() -> readPluginAssets(next)));
                 }
+
+                // Wait for the assets of this plugin
+                PluginAssets pluginAssets;
                 try {
-                    praeterPlugin.onIncludeAssets(resourcePack);
-                } catch (Throwable e) {
-                    getLogger().severe("Error in onIncludeAssets method from " + plugin.getName()
-                        + " for resource pack " + resourceManager.getPacks().getId(resourcePack));
-                    e.printStackTrace();
-                    // Break out of this loop (continue to next plugin)
-                    break;
+                    pluginAssets = pending.remove().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while reading plugin jar files.", e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Failed to read plugin jar file of " + plugin.getName(), e.getCause());
                 }
+
+                this.includePluginAssets(plugin, pluginAssets.assets());
+
+                // Close assets
+                pluginAssets.assets().getRoot().getFileSystem().close();
             }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close plugin assets.", e);
+        } finally {
+            executor.shutdownNow();
+        }
 
-            // Close assets
+        if (!worldPacksCreated) {
+            this.createWorldPacks(worldPacks);
+        }
+    }
+
+    /**
+     * Get the sets of enabled plugins that differ from all plugins in the worlds
+     * that are loaded, and the ids of the packs that will be created for them.
+     * <p>
+     * The id of a pack is derived from the name of the first world it is used in.
+     *
+     * @param pluginNames The names of all plugins.
+     * @return The ids by the set of enabled plugins.
+     */
+    private Map<Set<String>, String> getWorldPacks(Set<String> pluginNames) {
+        ResourceManager resourceManager = Praeter.get().getResourceManager();
+        Map<Set<String>, String> worldPacks = new LinkedHashMap<>();
+        Set<String> ids = new HashSet<>();
+        ids.add(PacksHolder.MAIN_ID);
+        for (World world : this.getServer().getWorlds()) {
+            Set<String> enabledPlugins = resourceManager.getEnabledPlugins(world);
+            if (enabledPlugins.equals(pluginNames) || worldPacks.containsKey(enabledPlugins)) {
+                continue;
+            }
+            String baseId = world.getName().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9_-]", "_");
+            String id = baseId;
+            for (int i = 2; !ids.add(id); i++) {
+                id = baseId + "-" + i;
+            }
+            worldPacks.put(enabledPlugins, id);
+        }
+        return worldPacks;
+    }
+
+    /**
+     * Create the packs for worlds where not all plugins are enabled by copying the
+     * main pack.
+     *
+     * @param worldPacks The ids by the set of enabled plugins.
+     * @see #getWorldPacks(Set)
+     */
+    private void createWorldPacks(Map<Set<String>, String> worldPacks) {
+        ResourceManager resourceManager = Praeter.get().getResourceManager();
+        ResourcePacksHolder packs = resourceManager.getPacks();
+        for (Map.Entry<Set<String>, String> entry : worldPacks.entrySet()) {
             try {
-                pluginAssets.getRoot().getFileSystem().close();
+                packs.addPack(entry.getValue(), packs.getMain().copyInMemory());
             } catch (IOException e) {
-                throw new RuntimeException("Failed to close plugin jar file.", e);
+                throw new RuntimeException("Failed to create resource pack " + entry.getValue(), e);
+            }
+            resourceManager.setPackPlugins(entry.getValue(), entry.getKey());
+            this.getLogger().info("Created resource pack " + entry.getValue() + " for worlds with the plugins "
+                + entry.getKey());
+        }
+    }
+
+    /**
+     * Read the assets of a plugin from its jar file into memory, without
+     * decompressing them.
+     *
+     * @param plugin The plugin.
+     * @return The read assets.
+     * @throws IOException If an I/O error occurs.
+     * @throws URISyntaxException If the location of the jar file is invalid.
+     */
+    private static PluginAssets readPluginAssets(Plugin plugin) throws IOException, URISyntaxException {
+        Path jarPath = Path.of(plugin.getClass().getProtectionDomain().getCodeSource().getLocation().toURI());
+
+        // Only the assets are read, and they are kept compressed as in the jar
+        ResourcePack assets = ResourcePack.readZipIntoMemory(jarPath, name -> name.startsWith("assets/"));
+        return new PluginAssets(assets);
+    }
+
+    /**
+     * Include the read assets of a plugin into the resource packs where the plugin
+     * is enabled.
+     *
+     * @param plugin The plugin.
+     * @param pluginAssets The assets of the plugin.
+     */
+    private void includePluginAssets(Plugin plugin, ResourcePack pluginAssets) {
+        ResourceManager resourceManager = Praeter.get().getResourceManager();
+        PraeterPlugin praeterPlugin = (PraeterPlugin) plugin;
+
+        // Include assets into resource packs
+        for (ResourcePack resourcePack : resourceManager.getResourcePacks(plugin)) {
+            try {
+                resourcePack.include(pluginAssets);
+            } catch (ResourceCollisionException | IOException e) {
+                getLogger().severe("Failed to include assets from " + plugin.getName()
+                        + " into resource pack " + resourceManager.getPacks().getId(resourcePack));
+                e.printStackTrace();
+                // Break out of this loop (continue to next plugin)
+                break;
+            }
+            try {
+                praeterPlugin.onIncludeAssets(resourcePack);
+            } catch (Throwable e) {
+                getLogger().severe("Error in onIncludeAssets method from " + plugin.getName()
+                    + " for resource pack " + resourceManager.getPacks().getId(resourcePack));
+                e.printStackTrace();
+                // Break out of this loop (continue to next plugin)
+                break;
             }
         }
     }
 
+    /**
+     * The assets of a plugin that have been read from its jar file.
+     *
+     * @param assets The assets, in memory.
+     */
+    private record PluginAssets(ResourcePack assets) {}
+
     /**
      * Set up the {@link ca.bkaw.praeter.core.resources.send.ResourcePackSender}.
      */
@@ -275,13 +445,17 @@ public class PraeterImplPlugin extends JavaPlugin implements PraeterPlugin {
      * <p>
      * After this method is called, packs will no longer be accessible from the
      * resource manager and baked packs will become available.
+     * <p>
+     * The packs are built in parallel, and the available processors are divided
+     * between them.
      */
     private void bakePacks() {
         this.getLogger().info("Baking and closing packs");
         ResourceManager resourceManager = Praeter.get().getResourceManager();
         // Get the packs before removing the PacksHolder
-        ResourcePack pack = resourceManager.getPacks().getMain();
+        Map<String, ResourcePack> packs = new LinkedHashMap<>(resourceManager.getPacks().getPacks());
         ResourcePack vanillaAssets = resourceManager.getPacks().getVanillaAssets();
+        PackBuildCache buildCache = resourceManager.getPacks().getBuildCache();
 
         // Save custom model data store
         try {
@@ -299,22 +473,64 @@ public class PraeterImplPlugin extends JavaPlugin implements PraeterPlugin {
             throw new RuntimeException("Failed to close vanilla assets.", e);
         }
 
-        BakedResourcePack baked;
-        try {
-            baked = BakedResourcePack.bake(pack);
-        } catch (Throwable e) {
-            throw new RuntimeException("Failed to bake main resource pack.", e);
+        Path resourcePacksFolder = resourceManager.getResourcePacksFolder();
+        int processors = Runtime.getRuntime().availableProcessors();
+        int threadsPerPack = Math.max(1, processors / packs.size());
+        // The optimizer is shared so that textures that are in multiple packs are only
+        // optimized once
+        PngOptimizer optimizer = Praeter.get().getConfig().resourcePacks().optimizeTextures()
+            ? new PngOptimizer(threadsPerPack) : null;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(processors, packs.size()), runnable -> {
+            Thread thread = new Thread(runnable, "Praeter Pack Builder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, Future<BakedResourcePack>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, ResourcePack> entry : packs.entrySet()) {
+            String id = entry.getKey();
+            Path path = resourcePacksFolder.resolve(id + ".zip");
+            futures.put(id, executor.submit(() ->
+                this.buildPack(id, entry.getValue(), path, buildCache, optimizer, threadsPerPack)));
         }
 
-        // Create the PacksHolder for baked resource packs
-        resourceManager.setBakedPacks(new PacksHolder<>(baked));
-
+        // Create the PacksHolder for baked resource packs, the main pack is first
+        PacksHolder<BakedResourcePack> bakedPacks = null;
         try {
-            pack.getRoot().getFileSystem().close();
-        } catch (Throwable e) {
-            throw new RuntimeException("Failed to close main resource pack.", e);
+            for (Map.Entry<String, Future<BakedResourcePack>> entry : futures.entrySet()) {
+                BakedResourcePack baked;
+                try {
+                    baked = entry.getValue().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while building resource packs.", e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Failed to build resource pack " + entry.getKey(), e.getCause());
+                }
+                if (bakedPacks == null) {
+                    bakedPacks = new PacksHolder<>(baked);
+                } else {
+                    bakedPacks.addPack(entry.getKey(), baked);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        resourceManager.setBakedPacks(bakedPacks);
+
+        for (Map.Entry<String, ResourcePack> entry : packs.entrySet()) {
+            try {
+                entry.getValue().getRoot().getFileSystem().close();
+            } catch (Throwable e) {
+                throw new RuntimeException("Failed to close resource pack " + entry.getKey(), e);
+            }
         }
 
+        this.deleteStalePacks(resourcePacksFolder, packs.keySet());
+
+        // The pack files have now been written, let the sender prepare them
+        resourceManager.getResourcePackSender().onPacksBaked(bakedPacks);
+
         this.getLogger().info("All packs have been baked and closed.");
 
         for (Plugin plugin : this.getServer().getPluginManager().getPlugins()) {
@@ -328,4 +544,106 @@ public class PraeterImplPlugin extends JavaPlugin implements PraeterPlugin {
             }
         }
     }
+
+    /**
+     * Bake and write a resource pack, or reuse the pack from the previous startup if
+     * nothing has changed.
+     *
+     * @param id The id of the pack.
+     * @param pack The pack.
+     * @param path The path to write the pack to.
+     * @param buildCache The build cache.
+     * @param optimizer The optimizer to make textures smaller with, or null.
+     * @param threads The amount of threads to compress entries on.
+     * @return The baked pack, with its file set.
+     */
+    private BakedResourcePack buildPack(String id, ResourcePack pack, Path path, PackBuildCache buildCache,
+                                        @Nullable PngOptimizer optimizer, int threads) {
+        // Reuse the pack from the previous startup if the pack has the same contents
+        String fingerprint = null;
+        BakedResourcePack baked = null;
+        try {
+            fingerprint = buildCache.getFingerprint(pack);
+            baked = buildCache.load(path, fingerprint);
+        } catch (IOException e) {
+            this.getLogger().warning("Failed to read the pack build cache, the pack " + id + " will be rebuilt.");
+            e.printStackTrace();
+        }
+
+        if (baked != null) {
+            this.getLogger().info("Nothing has changed since the last startup, reusing the cached pack " + id + ".");
+            return baked;
+        }
+
+        // Combine the glyphs of generated font characters into atlases, the index of
+        // the pack is updated so that the atlases are baked
+        try {
+            GlyphAtlasPacker.Result result = new GlyphAtlasPacker().pack(pack);
+            if (result.atlases() > 0) {
+                this.getLogger().info("Packed " + result.glyphs() + " glyphs into " + result.atlases()
+                    + " atlases in resource pack " + id + " in " + result.nanos() / 1_000_000 + " ms.");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to pack glyphs in resource pack " + id, e);
+        }
+
+        try {
+            baked = BakedResourcePack.bake(pack);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to bake resource pack " + id, e);
+        }
+
+        // Make the textures smaller before the pack is written
+        if (optimizer != null) {
+            try {
+                PngOptimizer.Result result = optimizer.optimize(pack);
+                this.getLogger().info("Optimized " + result.optimized() + " of " + result.images()
+                    + " textures in resource pack " + id + ", saving " + result.savedBytes() / 1024
+                    + " KiB in " + result.nanos() / 1_000_000 + " ms.");
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to optimize textures in resource pack " + id, e);
+            }
+        }
+
+        // Write the pack, the hash is computed while writing so that it does not
+        // have to be computed every time the pack is sent
+        PackZipWriter writer = new PackZipWriter(Praeter.get().getConfig().resourcePacks().compression(), threads);
+        try {
+            baked.setFile(writer.write(pack, path));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write resource pack " + id, e);
+        }
+        this.getLogger().info("Wrote resource pack " + id + ": " + writer.getLastReport().describe());
+
+        try {
+            if (fingerprint != null) {
+                buildCache.save(baked, fingerprint);
+            }
+        } catch (IOException e) {
+            this.getLogger().warning("Failed to save the pack build cache for resource pack " + id + ".");
+            e.printStackTrace();
+        }
+        return baked;
+    }
+
+    /**
+     * Delete the files of packs that were written during a previous startup, but
+     * that no longer exist, for example because a world was removed.
+     *
+     * @param resourcePacksFolder The folder the packs are written to.
+     * @param ids The ids of the packs that exist.
+     */
+    private void deleteStalePacks(Path resourcePacksFolder, Set<String> ids) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(resourcePacksFolder, "*.{zip,index}")) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                if (!ids.contains(fileName.substring(0, fileName.lastIndexOf('.')))) {
+                    Files.delete(path);
+                }
+            }
+        } catch (IOException e) {
+            this.getLogger().warning("Failed to delete the files of removed packs.");
+            e.printStackTrace();
+        }
+    }
 }
@@ -1,20 +1,33 @@
 package ca.bkaw.praeter.plugin.config;
 
 import ca.bkaw.praeter.core.config.PraeterConfig;
+import ca.bkaw.praeter.core.config.PraeterConfig.ResourcePacksConfig;
+import ca.bkaw.praeter.core.config.PraeterConfig.ResourcePacksConfig.VanillaAssetsConfig;
 import ca.bkaw.praeter.core.config.PraeterConfig.SenderConfig;
 import ca.bkaw.praeter.core.config.PraeterConfig.SenderConfig.CommonConfig;
 import ca.bkaw.praeter.core.config.PraeterConfig.SenderConfig.HttpServerConfig;
 import ca.bkaw.praeter.core.config.PraeterConfig.SenderConfig.SenderType;
+import ca.bkaw.praeter.core.resources.pack.VanillaAssets;
+import ca.bkaw.praeter.core.resources.pack.output.CompressionPolicy;
 import ca.bkaw.praeter.core.resources.send.HttpServerResourcePackSender;
+import ca.bkaw.praeter.plugin.config.PraeterConfigImpl.ResourcePacksConfigImpl;
+import ca.bkaw.praeter.plugin.config.PraeterConfigImpl.ResourcePacksConfigImpl.VanillaAssetsConfigImpl;
 import ca.bkaw.praeter.plugin.config.PraeterConfigImpl.SenderConfigImpl.CommonConfigImpl;
 import ca.bkaw.praeter.plugin.config.PraeterConfigImpl.SenderConfigImpl.HttpServerConfigImpl;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.zip.Deflater;
 
 /**
  * A class responsible for loading the {@link PraeterConfig} from yml.
@@ -32,8 +45,9 @@ public class ConfigLoader {
         this.yml.options().copyDefaults(true);
 
         SenderConfig senderConfig = this.loadSenderConfig();
+        ResourcePacksConfig resourcePacksConfig = this.loadResourcePacksConfig();
 
-        return new PraeterConfigImpl(senderConfig);
+        return new PraeterConfigImpl(senderConfig, resourcePacksConfig);
     }
 
     private SenderConfig loadSenderConfig() throws InvalidConfigurationException {
@@ -115,6 +129,139 @@ public class ConfigLoader {
         return new HttpServerConfigImpl(port);
     }
 
+    private ResourcePacksConfig loadResourcePacksConfig() throws InvalidConfigurationException {
+        ConfigurationSection config = this.getSection(this.yml, "resource_packs");
+        this.yml.setComments("resource_packs", List.of(
+            "Configuration for how resource packs are built."
+        ));
+
+        // build_cache
+        if (!config.isSet("build_cache")) {
+            config.set("build_cache", true);
+        }
+        boolean buildCache = config.getBoolean("build_cache");
+        config.setComments("build_cache", List.of(
+            "Whether to reuse the resource pack from the previous startup when the files",
+            "in the pack are the same, instead of writing the pack again.",
+            "(Default: true)"
+        ));
+
+        CompressionPolicy compression = this.loadCompressionConfig(config);
+
+        // optimize_textures
+        if (!config.isSet("optimize_textures")) {
+            config.set("optimize_textures", true);
+        }
+        boolean optimizeTextures = config.getBoolean("optimize_textures");
+        config.setComments("optimize_textures", List.of(
+            "Whether to re-encode PNG textures losslessly when the resource pack is",
+            "built, to make the pack smaller. The pixels are not changed. (Default: true)"
+        ));
+
+        VanillaAssetsConfig vanillaAssets = this.loadVanillaAssetsConfig(config);
+
+        return new ResourcePacksConfigImpl(buildCache, compression, optimizeTextures, vanillaAssets);
+    }
+
+    private VanillaAssetsConfig loadVanillaAssetsConfig(ConfigurationSection parent) throws InvalidConfigurationException {
+        ConfigurationSection config = this.getSection(parent, "vanilla_assets");
+        parent.setComments("vanilla_assets", List.of(
+            "Configuration for where the vanilla assets are read from. The assets are",
+            "read from the Minecraft client jar, which is downloaded the first time it",
+            "is needed unless a jar for the current version is found locally."
+        ));
+
+        // version_manifest_url
+        if (!config.isSet("version_manifest_url")) {
+            config.set("version_manifest_url", VanillaAssets.VERSION_MANIFEST_URL);
+        }
+        String versionManifestUrl = config.getString("version_manifest_url", VanillaAssets.VERSION_MANIFEST_URL);
+        config.setComments("version_manifest_url", List.of(
+            "The url of the version manifest used to find the client jar when it is",
+            "downloaded. May be a file: url. (Default: Mojang's version manifest)"
+        ));
+        try {
+            new URL(versionManifestUrl);
+        } catch (MalformedURLException e) {
+            throw new InvalidConfigurationException(
+                "resource_packs.vanilla_assets.version_manifest_url must be a valid url"
+            );
+        }
+
+        // client_jar
+        if (!config.isSet("client_jar")) {
+            config.set("client_jar", "");
+        }
+        Path clientJar = this.getPath(config, "client_jar");
+        config.setComments("client_jar", List.of(
+            "The path of a client jar to use instead of downloading it. Ignored if the",
+            "jar is not for the current version. Leave empty to not use. (Default: \"\")"
+        ));
+
+        // mirror_directory
+        if (!config.isSet("mirror_directory")) {
+            config.set("mirror_directory", "");
+        }
+        Path mirrorDirectory = this.getPath(config, "mirror_directory");
+        config.setComments("mirror_directory", List.of(
+            "The path of a directory containing client jars named after the version,",
+            "for example \"1.19.2.jar\", to use instead of downloading it. Leave empty",
+            "to not use. (Default: \"\")"
+        ));
+
+        return new VanillaAssetsConfigImpl(versionManifestUrl, clientJar, mirrorDirectory);
+    }
+
+    @Nullable
+    private Path getPath(ConfigurationSection config, String key) throws InvalidConfigurationException {
+        String value = config.getString(key, "").trim();
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Path.of(value);
+        } catch (InvalidPathException e) {
+            throw new InvalidConfigurationException(config.getCurrentPath() + "." + key + " must be a valid path");
+        }
+    }
+
+    private CompressionPolicy loadCompressionConfig(ConfigurationSection parent) throws InvalidConfigurationException {
+        ConfigurationSection config = this.getSection(parent, "compression");
+        parent.setComments("compression", List.of(
+            "Configuration for how the files in resource packs are compressed."
+        ));
+
+        // stored_extensions
+        if (!config.isSet("stored_extensions")) {
+            config.set("stored_extensions", CompressionPolicy.DEFAULT.storedExtensions().stream().sorted().toList());
+        }
+        List<String> storedExtensions = config.getStringList("stored_extensions");
+        config.setComments("stored_extensions", List.of(
+            "File extensions of files that are stored without compression. Files in these",
+            "formats are already compressed, so compressing them again only costs time",
+            "when building the pack and when players load it. (Default: [png, ogg])"
+        ));
+
+        // deflate_level
+        if (!config.isSet("deflate_level")) {
+            config.set("deflate_level", Deflater.DEFAULT_COMPRESSION);
+        }
+        int deflateLevel = config.getInt("deflate_level");
+        config.setComments("deflate_level", List.of(
+            "The compression level, from 0 to 9, used for other files like models and",
+            "fonts. Higher levels give smaller packs but take longer to build. -1 uses",
+            "the default level. (Default: -1)"
+        ));
+        if (deflateLevel != Deflater.DEFAULT_COMPRESSION
+            && (deflateLevel < Deflater.NO_COMPRESSION || deflateLevel > Deflater.BEST_COMPRESSION)) {
+            throw new InvalidConfigurationException(
+                "resource_packs.compression.deflate_level must be between 0 and 9, or -1"
+            );
+        }
+
+        return new CompressionPolicy(new HashSet<>(storedExtensions), deflateLevel);
+    }
+
     @NotNull
     private ConfigurationSection getSection(ConfigurationSection parent, String key) {
         ConfigurationSection section = parent.getConfigurationSection(key);
@@ -1,13 +1,17 @@
 package ca.bkaw.praeter.plugin.config;
 
 import ca.bkaw.praeter.core.config.PraeterConfig;
+import ca.bkaw.praeter.core.resources.pack.output.CompressionPolicy;
+
+import java.nio.file.Path;
 
 /**
  * Implementation of {@link PraeterConfig}. Loaded by {@link ConfigLoader}.
  *
  * @param sender The sender config.
+ * @param resourcePacks The resource packs config.
  */
-public record PraeterConfigImpl(SenderConfig sender) implements PraeterConfig {
+public record PraeterConfigImpl(SenderConfig sender, ResourcePacksConfig resourcePacks) implements PraeterConfig {
 
     public record SenderConfigImpl(
         SenderType sender,
@@ -18,4 +22,18 @@ public record PraeterConfigImpl(SenderConfig sender) implements PraeterConfig {
         public record CommonConfigImpl(String hostname) implements CommonConfig {}
         public record HttpServerConfigImpl(int port) implements HttpServerConfig {}
     }
+
+    public record ResourcePacksConfigImpl(
+        boolean buildCache,
+        CompressionPolicy compression,
+        boolean optimizeTextures,
+        VanillaAssetsConfig vanillaAssets
+    ) implements ResourcePacksConfig {
+
+        public record VanillaAssetsConfigImpl(
+            String versionManifestUrl,
+            Path clientJar,
+            Path mirrorDirectory
+        ) implements VanillaAssetsConfig {}
+    }
 }